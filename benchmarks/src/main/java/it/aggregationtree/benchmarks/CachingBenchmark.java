@@ -0,0 +1,114 @@
+package it.aggregationtree.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.aggregators.Aggregators;
+
+/**
+ * Throughput of a mixed workload of prefix queries and inserts, with and
+ * without caching. Every insert invalidates the cached aggregations on its
+ * path, so the benefit of caching shrinks as the share of inserts grows.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CachingBenchmark {
+
+	// number of distinct operations cycled through
+	private static final int OPERATIONS = 4096;
+
+	@Param({ "false", "true" })
+	public boolean caching;
+
+	@Param({ "0.5", "0.9", "0.99" })
+	public double readRatio;
+
+	@Param({ "aggregator", "function" })
+	public String aggregation;
+
+	@Param({ "3" })
+	public int depth;
+
+	@Param({ "10" })
+	public int fanout;
+
+	@Param({ "1000" })
+	public int cardinality;
+
+	@Param({ "1.2" })
+	public double skew;
+
+	@Param({ "100000" })
+	public int rows;
+
+	private Dataset dataset;
+	private AggregationTree<Integer, Integer> tree;
+	private boolean[] reads;
+	private String[][] queries;
+	private List<PositionalRow<Integer>> inserts;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		this.dataset = new Dataset(this.depth, this.fanout, this.cardinality, this.skew, this.rows, 42);
+		Random random = new Random(7);
+		this.reads = new boolean[OPERATIONS];
+		for (int i = 0; i < OPERATIONS; i++) {
+			this.reads[i] = random.nextDouble() < this.readRatio;
+		}
+		// queries of every level, as in a drill down
+		this.queries = new String[OPERATIONS][];
+		for (int i = 0; i < OPERATIONS; i++) {
+			this.queries[i] = this.dataset.getQueries(i % (this.depth + 1), 1, i)[0];
+		}
+		this.inserts = new Dataset(this.depth, this.fanout, this.cardinality, this.skew, OPERATIONS, 43)
+				.getPositionalRows();
+	}
+
+	// every iteration starts from the same tree and an empty cache
+	@Setup(Level.Iteration)
+	public void createTree() {
+		if (this.aggregation.equals("aggregator")) {
+			this.tree = new AggregationTree<Integer, Integer>(this.dataset.getRows(), Aggregators.intSum(),
+					this.dataset.getDimensions());
+		} else {
+			this.tree = new AggregationTree<Integer, Integer>(this.dataset.getRows(), (l) -> {
+				return l.stream().reduce(0, (a, b) -> a + b);
+			}, this.dataset.getDimensions());
+		}
+		this.tree.setCaching(this.caching);
+		this.next = 0;
+	}
+
+	@Benchmark
+	public Integer mixed() {
+		int operation = this.next;
+		this.next = (this.next + 1) & (OPERATIONS - 1);
+		if (this.reads[operation]) {
+			return this.tree.get(this.queries[operation]);
+		}
+		this.tree.insert(this.inserts.get(operation));
+		return null;
+	}
+
+}
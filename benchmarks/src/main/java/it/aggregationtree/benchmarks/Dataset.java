@@ -0,0 +1,149 @@
+package it.aggregationtree.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.Row;
+
+/**
+ * Synthetic dataset of rows with integer values. The rows form a tree of the
+ * given depth, where every node has up to fanout childs, drawn from the label
+ * values of its dimension. Each dimension has the given number of distinct
+ * label values, and the childs of a node are chosen following a Zipf
+ * distribution with the given skew: 0 makes all the childs equally likely,
+ * while higher skews concentrate the rows on the first childs of each node.
+ * The same parameters and seed always generate the same rows.
+ */
+public class Dataset {
+
+	private final String[] dimensions;
+	private final List<PositionalRow<Integer>> rows;
+
+	// constructors
+
+	/**
+	 * @param depth: the number of dimensions.
+	 * @param fanout: the maximum number of childs of a node.
+	 * @param cardinality: the number of distinct label values of each dimension,
+	 *        at least fanout.
+	 * @param skew: the exponent of the Zipf distribution of the childs.
+	 * @param size: the number of rows.
+	 * @param seed: the seed of the generator.
+	 */
+	public Dataset(int depth, int fanout, int cardinality, double skew, int size, long seed) {
+		if (cardinality < fanout) {
+			throw new IllegalArgumentException("The cardinality must be at least the fanout.");
+		}
+		this.dimensions = new String[depth];
+		for (int i = 0; i < depth; i++) {
+			this.dimensions[i] = "dimension" + i;
+		}
+		double[] cumulative = zipf(fanout, skew);
+		Random random = new Random(seed);
+		this.rows = new ArrayList<PositionalRow<Integer>>(size);
+		for (int r = 0; r < size; r++) {
+			String[] labelValues = new String[depth];
+			// the label values of the childs of a node depend on its path
+			long path = 0;
+			for (int i = 0; i < depth; i++) {
+				int child = Arrays.binarySearch(cumulative, random.nextDouble());
+				child = child < 0 ? -child - 1 : child;
+				path = path * 31 + child;
+				labelValues[i] = "value" + Math.floorMod(path * 0x9E3779B9L, (long) cardinality);
+			}
+			this.rows.add(new PositionalRow<Integer>(labelValues, random.nextInt(1000)));
+		}
+	}
+
+	// public methods
+
+	public String[] getDimensions() {
+		return this.dimensions.clone();
+	}
+
+	public List<PositionalRow<Integer>> getPositionalRows() {
+		return this.rows;
+	}
+
+	/**
+	 * @return the rows of the dataset, labelled by dimension.
+	 */
+	public List<Row<Integer>> getRows() {
+		List<Row<Integer>> rows = new ArrayList<Row<Integer>>(this.rows.size());
+		for (PositionalRow<Integer> positional : this.rows) {
+			Row<Integer> row = new Row<Integer>();
+			for (int i = 0; i < this.dimensions.length; i++) {
+				row.addLabel(this.dimensions[i], positional.getLabel(i));
+			}
+			row.setValue(positional.getValue());
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Samples prefix queries of a given level from the rows, so that the queried
+	 * groups follow the distribution of the rows.
+	 *
+	 * @param level: the number of label values of each query.
+	 * @param count: the number of queries.
+	 * @param seed: the seed of the sampling.
+	 *
+	 * @return the label values of the queries.
+	 */
+	public String[][] getQueries(int level, int count, long seed) {
+		Random random = new Random(seed);
+		String[][] queries = new String[count][];
+		for (int q = 0; q < count; q++) {
+			String[] labelValues = this.rows.get(random.nextInt(this.rows.size())).getLabelValues();
+			queries[q] = Arrays.copyOf(labelValues, level);
+		}
+		return queries;
+	}
+
+	/**
+	 * Writes the rows to a JSON file, in the format read by InputLoader.
+	 *
+	 * @param output: the file to be written.
+	 */
+	public void writeJson(File output) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(output.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("[");
+			for (int r = 0; r < this.rows.size(); r++) {
+				PositionalRow<Integer> row = this.rows.get(r);
+				writer.write(r == 0 ? "\n" : ",\n");
+				writer.write("{\"value\": " + row.getValue() + ", \"labels\": {");
+				for (int i = 0; i < this.dimensions.length; i++) {
+					writer.write((i == 0 ? "\"" : ", \"") + this.dimensions[i] + "\": \"" + row.getLabel(i) + "\"");
+				}
+				writer.write("}}");
+			}
+			writer.write("\n]\n");
+		}
+	}
+
+	// private methods
+
+	// cumulative probabilities of the childs of a node
+	private static double[] zipf(int fanout, double skew) {
+		double[] cumulative = new double[fanout];
+		double total = 0;
+		for (int i = 0; i < fanout; i++) {
+			total = total + 1 / Math.pow(i + 1, skew);
+			cumulative[i] = total;
+		}
+		for (int i = 0; i < fanout; i++) {
+			cumulative[i] = cumulative[i] / total;
+		}
+		return cumulative;
+	}
+
+}
@@ -0,0 +1,86 @@
+package it.aggregationtree.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.aggregators.Aggregators;
+
+/**
+ * Latency of prefix queries at each depth of the tree, without caching. Trees
+ * using an aggregator finish the partial state of the queried node, while
+ * trees using a function aggregate all the values below it, so their latency
+ * grows with the number of rows of the queried group. The level must not
+ * exceed the depth.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GetBenchmark {
+
+	// number of distinct queries cycled through
+	private static final int QUERIES = 1024;
+
+	@Param({ "4" })
+	public int depth;
+
+	@Param({ "0", "1", "2", "3", "4" })
+	public int level;
+
+	@Param({ "10" })
+	public int fanout;
+
+	@Param({ "1000" })
+	public int cardinality;
+
+	@Param({ "0", "1.2" })
+	public double skew;
+
+	@Param({ "100000" })
+	public int rows;
+
+	@Param({ "aggregator", "function" })
+	public String aggregation;
+
+	private AggregationTree<Integer, Integer> tree;
+	private String[][] queries;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void createTree() {
+		Dataset dataset = new Dataset(this.depth, this.fanout, this.cardinality, this.skew, this.rows, 42);
+		if (this.aggregation.equals("aggregator")) {
+			this.tree = new AggregationTree<Integer, Integer>(dataset.getRows(), Aggregators.intSum(),
+					dataset.getDimensions());
+		} else {
+			this.tree = new AggregationTree<Integer, Integer>(dataset.getRows(), (l) -> {
+				return l.stream().reduce(0, (a, b) -> a + b);
+			}, dataset.getDimensions());
+		}
+		this.queries = dataset.getQueries(this.level, QUERIES, 7);
+		this.next = 0;
+	}
+
+	@Benchmark
+	public Integer get() {
+		String[] query = this.queries[this.next];
+		this.next = (this.next + 1) & (QUERIES - 1);
+		return this.tree.get(query);
+	}
+
+}
@@ -0,0 +1,104 @@
+package it.aggregationtree.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.Row;
+import it.aggregationtree.aggregators.Aggregators;
+
+/**
+ * Throughput of inserting rows one by one into a growing tree, and time to
+ * load a whole dataset into an empty tree, sequentially or in parallel.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class InsertBenchmark {
+
+	@Param({ "3", "5" })
+	public int depth;
+
+	@Param({ "10", "100" })
+	public int fanout;
+
+	@Param({ "1000" })
+	public int cardinality;
+
+	@Param({ "0", "1.2" })
+	public double skew;
+
+	@Param({ "100000" })
+	public int rows;
+
+	private Dataset dataset;
+	private List<Row<Integer>> data;
+	private List<PositionalRow<Integer>> positionalData;
+	private AggregationTree<Integer, Integer> tree;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		this.dataset = new Dataset(this.depth, this.fanout, this.cardinality, this.skew, this.rows, 42);
+		this.data = this.dataset.getRows();
+		this.positionalData = this.dataset.getPositionalRows();
+	}
+
+	// every iteration inserts into a new tree, so that the tree does not grow
+	// across iterations
+	@Setup(Level.Iteration)
+	public void createTree() {
+		this.tree = new AggregationTree<Integer, Integer>(Aggregators.intSum(), this.dataset.getDimensions());
+		this.next = 0;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public void insert() {
+		this.tree.insert(this.positionalData.get(this.next));
+		this.next = this.next + 1 == this.positionalData.size() ? 0 : this.next + 1;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AggregationTree<Integer, Integer> load() {
+		return new AggregationTree<Integer, Integer>(this.data, Aggregators.intSum(), this.dataset.getDimensions());
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AggregationTree<Integer, Integer> parallelLoad() {
+		AggregationTree<Integer, Integer> tree = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				this.dataset.getDimensions());
+		tree.parallelLoad(this.data);
+		return tree;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public AggregationTree<Integer, Integer> loadFunction() {
+		return new AggregationTree<Integer, Integer>(this.data, (l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, this.dataset.getDimensions());
+	}
+
+}
@@ -0,0 +1,102 @@
+package it.aggregationtree.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.Row;
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.utils.InputLoader;
+import it.aggregationtree.utils.LoadReport;
+
+/**
+ * Parse rate of InputLoader.loadFromJson, materializing the rows or streaming
+ * them into a tree. Besides the loads per second, the bytes and rows parsed
+ * per second are reported as secondary results.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JsonLoadBenchmark {
+
+	@Param({ "3" })
+	public int depth;
+
+	@Param({ "10" })
+	public int fanout;
+
+	@Param({ "1000" })
+	public int cardinality;
+
+	@Param({ "100000" })
+	public int rows;
+
+	private Dataset dataset;
+	private File input;
+
+	// counters of the parsed bytes and rows, reported as rates
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Parsed {
+
+		public long bytes;
+		public long rows;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			this.bytes = 0;
+			this.rows = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void writeInput() throws IOException {
+		this.dataset = new Dataset(this.depth, this.fanout, this.cardinality, 0, this.rows, 42);
+		this.input = File.createTempFile("aggregation-tree-benchmark", ".json");
+		this.dataset.writeJson(this.input);
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteInput() {
+		this.input.delete();
+	}
+
+	@Benchmark
+	public List<Row<Integer>> materialize(Parsed parsed) {
+		List<Row<Integer>> data = new InputLoader<Integer>().loadFromJson(this.input);
+		parsed.bytes = parsed.bytes + this.input.length();
+		parsed.rows = parsed.rows + data.size();
+		return data;
+	}
+
+	@Benchmark
+	public AggregationTree<Integer, Integer> stream(Parsed parsed) {
+		AggregationTree<Integer, Integer> tree = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				this.dataset.getDimensions());
+		LoadReport report = new InputLoader<Integer>(Integer.class).loadFromJson(this.input, tree);
+		parsed.bytes = parsed.bytes + this.input.length();
+		parsed.rows = parsed.rows + report.getLoadedRows();
+		return tree;
+	}
+
+}
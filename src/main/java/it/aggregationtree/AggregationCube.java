@@ -0,0 +1,343 @@
+package it.aggregationtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+import it.aggregationtree.aggregators.Aggregator;
+
+/**
+ * A partial data cube: several aggregation orders over the same rows, whose
+ * values are stored once. The label codes and the value of every row are kept
+ * in a columnar row store, while every ordering is a tree whose deepest nodes
+ * hold the ids of their rows.
+ *
+ * Each ordering can be materialized, in which case its nodes keep the partial
+ * states of the aggregator and prefix queries are answered without visiting
+ * the rows; otherwise the ordering only costs its nodes and the row ids, and
+ * the rows below the queried node are aggregated at query time. Queries are
+ * routed by a planner to the ordering matching the longest prefix of the
+ * queried dimensions, and the dimensions not covered by that prefix are
+ * filtered on the row store.
+ */
+public class AggregationCube<V, R> {
+
+	private final Schema schema;
+	private final Function<List<V>, R> aggregationFunction;
+	private final Aggregator<V, Object, R> aggregator;
+	private final List<Ordering> orderings;
+	// row store: the codes of every dimension and the values, by row id
+	private int[][] codes;
+	private Object[] values;
+	private int size;
+
+	// an aggregation order, given as the positions of its dimensions in the schema
+	private class Ordering {
+
+		private final int[] dimensions;
+		private final boolean materialized;
+		private final CubeNode root;
+
+		private Ordering(int[] dimensions, boolean materialized) {
+			this.dimensions = dimensions;
+			this.materialized = materialized;
+			this.root = AggregationCube.this.newNode(materialized);
+		}
+
+		private void insert(int row, V value) {
+			CubeNode currentNode = this.root;
+			AggregationCube.this.accumulate(currentNode, this.materialized, value);
+			for (int dimension : this.dimensions) {
+				int code = AggregationCube.this.codes[dimension][row];
+				CubeNode child = currentNode.getChild(code);
+				if (child == null) {
+					child = AggregationCube.this.newNode(this.materialized);
+					currentNode.addChild(code, child);
+				}
+				currentNode = child;
+				AggregationCube.this.accumulate(currentNode, this.materialized, value);
+			}
+			currentNode.addRow(row);
+		}
+
+		private List<String> getDimensions() {
+			List<String> names = new ArrayList<String>();
+			for (int dimension : this.dimensions) {
+				names.add(AggregationCube.this.schema.getDimension(dimension));
+			}
+			return names;
+		}
+	}
+
+	// constructors
+
+	public AggregationCube(Function<List<V>, R> aggregationFunction, String... dimensions) {
+		this.schema = new Schema(dimensions);
+		this.aggregationFunction = aggregationFunction;
+		this.aggregator = null;
+		this.orderings = new ArrayList<Ordering>();
+		this.codes = new int[dimensions.length][16];
+		this.values = new Object[16];
+		this.size = 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <A> AggregationCube(Aggregator<V, A, R> aggregator, String... dimensions) {
+		this.schema = new Schema(dimensions);
+		this.aggregationFunction = null;
+		this.aggregator = (Aggregator<V, Object, R>) aggregator;
+		this.orderings = new ArrayList<Ordering>();
+		this.codes = new int[dimensions.length][16];
+		this.values = new Object[16];
+		this.size = 0;
+	}
+
+	// public methods
+
+	/**
+	 * Declares an aggregation order of the cube. The ordering can be added at any
+	 * time, since it is built from the rows already stored.
+	 *
+	 * @param materialized: whether the nodes of the ordering keep the partial
+	 *        states of the aggregator, trading memory for query latency.
+	 * @param labelsOrder: the dimensions of the ordering, a subset of the
+	 *        dimensions of the cube, each appearing once.
+	 */
+	public void addOrdering(boolean materialized, String... labelsOrder) {
+		if (materialized && this.aggregator == null) {
+			throw new IllegalStateException("Materialized orderings require a decomposable aggregator.");
+		}
+		int[] dimensions = new int[labelsOrder.length];
+		for (int i = 0; i < labelsOrder.length; i++) {
+			dimensions[i] = this.schema.indexOf(labelsOrder[i]);
+			if (dimensions[i] < 0) {
+				throw new IllegalArgumentException("The ordering contains an unknown dimension: " + labelsOrder[i]);
+			}
+			for (int j = 0; j < i; j++) {
+				if (dimensions[j] == dimensions[i]) {
+					throw new IllegalArgumentException("The ordering contains a repeated dimension: " + labelsOrder[i]);
+				}
+			}
+		}
+		Ordering ordering = new Ordering(dimensions, materialized);
+		for (int row = 0; row < this.size; row++) {
+			ordering.insert(row, this.value(row));
+		}
+		this.orderings.add(ordering);
+	}
+
+	/**
+	 * Loads a dataset of rows into the cube.
+	 *
+	 * @param data: the list of rows to be loaded into the cube.
+	 */
+	public void load(List<Row<V>> data) {
+		for (Row<V> r : data) {
+			this.insert(r);
+		}
+	}
+
+	/**
+	 * Inserts a row into the row store and into every ordering of the cube.
+	 *
+	 * @param row: the row to be inserted, with a label value for every dimension
+	 *        of the cube.
+	 */
+	public void insert(Row<V> row) {
+		if (row.getValue() == null) {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+		}
+		for (int i = 0; i < this.schema.size(); i++) {
+			if (row.getLabel(this.schema.getDimension(i)) == null) {
+				throw new IllegalArgumentException(
+						"The inserted row misses a value for an aggregation dimension: " + row);
+			}
+		}
+		if (this.size == this.values.length) {
+			this.grow();
+		}
+		int id = this.size;
+		for (int i = 0; i < this.schema.size(); i++) {
+			this.codes[i][id] = this.schema.getDictionary(i).encode(row.getLabel(this.schema.getDimension(i)));
+		}
+		this.values[id] = row.getValue();
+		this.size = id + 1;
+		for (Ordering ordering : this.orderings) {
+			ordering.insert(id, row.getValue());
+		}
+	}
+
+	/**
+	 * Retrieves the aggregated value of the rows having the given label values.
+	 *
+	 * @param query: the label values of the rows, keyed by dimension.
+	 *
+	 * @return the aggregated value.
+	 */
+	public R get(Map<String, String> query) {
+		int[] queryCodes = this.encode(query);
+		Ordering ordering = this.plan(queryCodes);
+		int matched = ordering == null ? 0 : this.matched(ordering, queryCodes);
+
+		CubeNode node = ordering == null ? null : ordering.root;
+		for (int i = 0; i < matched; i++) {
+			int dimension = ordering.dimensions[i];
+			node = node.getChild(queryCodes[dimension]);
+			if (node == null) {
+				String labelValue = query.get(this.schema.getDimension(dimension));
+				throw new IllegalArgumentException("The provided query specifies a missing label value: " + labelValue);
+			}
+		}
+		if (ordering != null && ordering.materialized && matched == query.size()) {
+			return this.aggregator.finish(node.getPartial());
+		}
+
+		// the dimensions not matched by the ordering are filtered on the row store
+		List<Integer> filtered = new ArrayList<Integer>();
+		for (int i = 0; i < queryCodes.length; i++) {
+			if (queryCodes[i] != Dictionary.MISSING && (ordering == null || !this.inPrefix(ordering, matched, i))) {
+				filtered.add(i);
+			}
+		}
+		List<V> values = this.aggregator == null ? new ArrayList<V>() : null;
+		Object[] partial = { this.aggregator == null ? null : this.aggregator.init() };
+		IntConsumer collect = (row) -> {
+			if (this.matches(row, filtered, queryCodes)) {
+				if (values != null) {
+					values.add(this.value(row));
+				} else {
+					partial[0] = this.aggregator.accumulate(partial[0], this.value(row));
+				}
+			}
+		};
+		if (node == null) {
+			for (int row = 0; row < this.size; row++) {
+				collect.accept(row);
+			}
+		} else {
+			node.forEachRow(collect);
+		}
+		return values != null ? this.aggregationFunction.apply(values) : this.aggregator.finish(partial[0]);
+	}
+
+	/**
+	 * Returns the ordering a query is routed to: the one whose longest prefix is
+	 * made of queried dimensions, preferring materialized orderings among those
+	 * covering the whole query.
+	 *
+	 * @param query: the label values of the rows, keyed by dimension.
+	 *
+	 * @return the dimensions of the chosen ordering, or an empty list if the
+	 *         query is answered by scanning the row store.
+	 */
+	public List<String> plan(Map<String, String> query) {
+		Ordering ordering = this.plan(this.encode(query));
+		return ordering == null ? Collections.<String>emptyList() : ordering.getDimensions();
+	}
+
+	public Schema getSchema() {
+		return this.schema;
+	}
+
+	// private methods
+
+	private Ordering plan(int[] queryCodes) {
+		int queried = 0;
+		for (int code : queryCodes) {
+			if (code != Dictionary.MISSING) {
+				queried = queried + 1;
+			}
+		}
+		Ordering best = null;
+		int bestMatched = 0;
+		for (Ordering ordering : this.orderings) {
+			int matched = this.matched(ordering, queryCodes);
+			boolean better = matched > bestMatched || (matched == bestMatched && matched == queried && best != null
+					&& ordering.materialized && !best.materialized);
+			if (best == null || better) {
+				best = ordering;
+				bestMatched = matched;
+			}
+		}
+		return best;
+	}
+
+	// length of the prefix of the ordering made of queried dimensions
+	private int matched(Ordering ordering, int[] queryCodes) {
+		int matched = 0;
+		while (matched < ordering.dimensions.length && queryCodes[ordering.dimensions[matched]] != Dictionary.MISSING) {
+			matched = matched + 1;
+		}
+		return matched;
+	}
+
+	private boolean inPrefix(Ordering ordering, int matched, int dimension) {
+		for (int i = 0; i < matched; i++) {
+			if (ordering.dimensions[i] == dimension) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// the codes of the queried label values by dimension, MISSING if not queried
+	private int[] encode(Map<String, String> query) {
+		int[] queryCodes = new int[this.schema.size()];
+		Arrays.fill(queryCodes, Dictionary.MISSING);
+		for (Map.Entry<String, String> entry : query.entrySet()) {
+			int dimension = this.schema.indexOf(entry.getKey());
+			if (dimension < 0) {
+				throw new IllegalArgumentException(
+						"The provided query specifies an unknown dimension: " + entry.getKey());
+			}
+			int code = this.schema.getDictionary(dimension).lookup(entry.getValue());
+			if (code == Dictionary.MISSING) {
+				throw new IllegalArgumentException(
+						"The provided query specifies a missing label value: " + entry.getValue());
+			}
+			queryCodes[dimension] = code;
+		}
+		return queryCodes;
+	}
+
+	private boolean matches(int row, List<Integer> filtered, int[] queryCodes) {
+		for (int dimension : filtered) {
+			if (this.codes[dimension][row] != queryCodes[dimension]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int row) {
+		return (V) this.values[row];
+	}
+
+	private CubeNode newNode(boolean materialized) {
+		CubeNode node = new CubeNode();
+		if (materialized) {
+			node.setPartial(this.aggregator.init());
+		}
+		return node;
+	}
+
+	private void accumulate(CubeNode node, boolean materialized, V value) {
+		if (materialized) {
+			node.setPartial(this.aggregator.accumulate(node.getPartial(), value));
+		}
+	}
+
+	private void grow() {
+		int capacity = this.size * 2;
+		for (int i = 0; i < this.codes.length; i++) {
+			this.codes[i] = Arrays.copyOf(this.codes[i], capacity);
+		}
+		this.values = Arrays.copyOf(this.values, capacity);
+	}
+
+}
@@ -1,35 +1,83 @@
 package it.aggregationtree;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 
+import it.aggregationtree.aggregators.Aggregator;
+import it.aggregationtree.aggregators.InvertibleAggregator;
+import it.aggregationtree.cache.CacheStats;
+import it.aggregationtree.cache.LruQueryCache;
+import it.aggregationtree.cache.QueryCache;
 import it.aggregationtree.exceptions.TooManyLabelsInQueryException;
+import it.aggregationtree.utils.Codec;
+import it.aggregationtree.utils.WriteAheadLog;
 
 public class AggregationTree<V, R> {
 
+	// number of aggregated values kept when caching is enabled without providing
+	// a cache
+	public static final long DEFAULT_CACHE_SIZE = 10000;
+
 	private Composite<V> root;
 	private final LinkedHashSet<String> labelsOrder;
+	private final Schema schema;
 	private final Function<List<V>, R> aggregationFunction;
+	private final Aggregator<V, Object, R> aggregator;
+	private QueryCache<R> queryCache;
+	private Boolean coalescing = false;
+	// nodes created in an earlier epoch are shared with a snapshot and are
+	// copied before being modified
+	private long epoch = 0;
+	private final boolean readOnly;
+	private WriteAheadLog<V> writeAheadLog;
+	// indexes of the deepest groups by the values of every dimension
+	private final SliceIndex sliceIndex;
+	// orders of the label values of the dimensions, null for unordered ones
+	private final LabelOrder[] orders;
 
 	// constructors
 
 	public AggregationTree(Function<List<V>, R> aggregationFunction, LinkedHashSet<String> labelsOrder) {
 		this.labelsOrder = labelsOrder;
-		this.root = new Composite<V>("All");
 		this.aggregationFunction = aggregationFunction;
+		this.aggregator = null;
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
 	}
 
 	public AggregationTree(List<Row<V>> data, Function<List<V>, R> aggregationFunction,
 			LinkedHashSet<String> labelsOrder) {
 		this.labelsOrder = labelsOrder;
-		this.root = new Composite<V>("All");
-		this.load(data);
 		this.aggregationFunction = aggregationFunction;
-
+		this.aggregator = null;
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
+		this.load(data);
 	}
 
 	public AggregationTree(Function<List<V>, R> aggregationFunction, String... labelsOrder) {
@@ -37,8 +85,13 @@ public class AggregationTree<V, R> {
 		for (int i = 0; i < labelsOrder.length; i++) {
 			this.labelsOrder.add(labelsOrder[i]);
 		}
-		this.root = new Composite<V>("All");
 		this.aggregationFunction = aggregationFunction;
+		this.aggregator = null;
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
 	}
 
 	public AggregationTree(List<Row<V>> data, Function<List<V>, R> aggregationFunction, String... labelsOrder) {
@@ -46,11 +99,64 @@ public class AggregationTree<V, R> {
 		for (int i = 0; i < labelsOrder.length; i++) {
 			this.labelsOrder.add(labelsOrder[i]);
 		}
-		this.root = new Composite<V>("All");
 		this.aggregationFunction = aggregationFunction;
+		this.aggregator = null;
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
+		this.load(data);
+	}
+
+	public <A> AggregationTree(Aggregator<V, A, R> aggregator, LinkedHashSet<String> labelsOrder) {
+		this.labelsOrder = labelsOrder;
+		this.aggregationFunction = null;
+		this.aggregator = this.erase(aggregator);
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
+	}
+
+	public <A> AggregationTree(List<Row<V>> data, Aggregator<V, A, R> aggregator, LinkedHashSet<String> labelsOrder) {
+		this(aggregator, labelsOrder);
+		this.load(data);
+	}
+
+	public <A> AggregationTree(Aggregator<V, A, R> aggregator, String... labelsOrder) {
+		this.labelsOrder = new LinkedHashSet<String>();
+		for (int i = 0; i < labelsOrder.length; i++) {
+			this.labelsOrder.add(labelsOrder[i]);
+		}
+		this.aggregationFunction = null;
+		this.aggregator = this.erase(aggregator);
+		this.schema = new Schema(this.labelsOrder);
+		this.readOnly = false;
+		this.sliceIndex = new SliceIndex(this.schema.size());
+		this.orders = new LabelOrder[this.schema.size()];
+		this.root = this.newNode("All", Dictionary.MISSING);
+	}
+
+	public <A> AggregationTree(List<Row<V>> data, Aggregator<V, A, R> aggregator, String... labelsOrder) {
+		this(aggregator, labelsOrder);
 		this.load(data);
 	}
 
+	// snapshots share the nodes of the tree they are taken from
+	private AggregationTree(AggregationTree<V, R> tree) {
+		this.labelsOrder = tree.labelsOrder;
+		this.aggregationFunction = tree.aggregationFunction;
+		this.aggregator = tree.aggregator;
+		this.schema = tree.schema;
+		this.coalescing = tree.coalescing;
+		this.readOnly = true;
+		this.sliceIndex = tree.sliceIndex.snapshot();
+		this.orders = tree.orders.clone();
+		this.root = tree.root;
+	}
+
 	// public methods
 
 	/**
@@ -64,49 +170,234 @@ public class AggregationTree<V, R> {
 		}
 	}
 
+	/**
+	 * Loads a dataset of rows into the aggregation tree using the common
+	 * fork-join pool.
+	 * 
+	 * @param data: the list of rows to be loaded into the tree.
+	 * @see #parallelLoad(List, ForkJoinPool)
+	 */
+	public void parallelLoad(List<Row<V>> data) {
+		this.parallelLoad(data, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Loads a dataset of rows into the aggregation tree in parallel. The rows are
+	 * partitioned by the value of the first dimension of the aggregation order and
+	 * the subtree of each partition is built by a separate task, so that no two
+	 * tasks ever touch the same node. The partial states of the root are merged
+	 * once all the tasks are completed. The rows are validated before any of them
+	 * is loaded, so an invalid row leaves the tree untouched. The tree must not be
+	 * accessed by other threads while the load is running.
+	 * 
+	 * The rows are appended to the write-ahead log once the tasks are completed.
+	 * If a task fails, as when the aggregator rejects a value, the rows loaded by
+	 * the tasks before the failure stay in the tree, are merged into the root and
+	 * are appended to the write-ahead log, while the failing row and the rows
+	 * following it in its partition are not loaded.
+	 * 
+	 * @param data: the list of rows to be loaded into the tree.
+	 * @param pool: the pool running the tasks building the subtrees.
+	 */
+	public void parallelLoad(List<Row<V>> data, ForkJoinPool pool) {
+		this.verifyWritable();
+		if (this.schema.size() == 0) {
+			this.load(data);
+			return;
+		}
+		String firstDimension = this.schema.getDimension(0);
+		Dictionary firstDictionary = this.schema.getDictionary(0);
+		// the rows are partitioned by label value, so that no value is added to
+		// the dictionary before all the rows are verified
+		Map<String, List<Row<V>>> partitions = new LinkedHashMap<String, List<Row<V>>>();
+		for (Row<V> row : data) {
+			if (row.getValue() == null) {
+				throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+			}
+			if (!this.verifyInsert(row.getLabels())) {
+				throw new IllegalArgumentException(
+						"The inserted row misses a value for an aggregation dimension: " + row);
+			}
+			partitions.computeIfAbsent(row.getLabel(firstDimension), (l) -> new ArrayList<Row<V>>()).add(row);
+		}
+
+		this.root = this.writable(null, this.root);
+		List<List<Row<V>>> rows = new ArrayList<List<Row<V>>>(partitions.values());
+		// the partial state and the number of rows loaded by each task, so far
+		Object[] deltas = new Object[rows.size()];
+		int[] loaded = new int[rows.size()];
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (Map.Entry<String, List<Row<V>>> partition : partitions.entrySet()) {
+			int code = firstDictionary.encode(partition.getKey());
+			Composite<V> child = this.root.getChild(code);
+			if (child != null) {
+				child = this.writable(this.root, child);
+			} else {
+				child = this.addChild(this.root, new int[] { code }, 0);
+			}
+			Composite<V> subtree = child;
+			int index = tasks.size();
+			tasks.add(() -> {
+				this.loadPartition(subtree, rows.get(index), index, deltas, loaded);
+				return null;
+			});
+		}
+
+		try {
+			List<Future<Object>> futures = pool.invokeAll(tasks);
+			// the rows loaded by failed tasks are kept as well
+			for (int i = 0; i < rows.size(); i++) {
+				if (this.aggregator != null && loaded[i] > 0) {
+					this.root.setPartial(this.aggregator.merge(this.root.getPartial(), deltas[i]));
+				}
+				if (this.writeAheadLog != null) {
+					for (Row<V> row : rows.get(i).subList(0, loaded[i])) {
+						this.writeAheadLog.append(this.schema.toPositional(row).getLabelValues(), row.getValue());
+					}
+				}
+			}
+			for (Future<Object> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("The parallel load was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The parallel load failed.", e.getCause());
+		} finally {
+			if (this.queryCache != null) {
+				this.queryCache.clear();
+			}
+		}
+	}
+
 	/**
 	 * Insert a row into the aggregation tree. If caching of previously queried
-	 * aggregations is enabled, this method invalidates the cache after having
-	 * inserted the new row.
+	 * aggregations is enabled, this method invalidates the cached aggregations of
+	 * the nodes on the path of the new row, leaving the other nodes untouched.
 	 * 
 	 * @param row: the row to be inserted.
 	 */
 	public void insert(Row<V> row) {
-		if (row.getValue() != null) {
-			if (this.verifyInsert(row.getLabels().keySet())) {
-				Composite<V> currentNode = root;
-				for (String label : this.labelsOrder) {
-					String labelValue = row.getLabels().get(label);
-					Boolean found = false;
-					Iterator<Node<V>> childIter = currentNode.getChilds().iterator();
-					while (childIter.hasNext() && !found) {
-						Composite<V> child = (Composite<V>) childIter.next();
-						if (child.getLabel().equals(labelValue)) {
-							currentNode = child;
-							found = true;
-						}
-					}
+		this.verifyWritable();
+		this.insertEncoded(this.schema.encode(this.labelValues(row, "inserted")), row.getValue());
+	}
 
-					if (!found) {
-						Composite<V> child = new Composite<V>(labelValue);
-						if (this.root.getCaching()) {
-							child.setCaching(true);
-						}
-						currentNode.addChild(child);
-						currentNode = child;
-					}
-				}
-				currentNode.addChild(new Leaf<V>(row.getValue()));
+	/**
+	 * Insert a positional row into the aggregation tree. The label values of the
+	 * row must follow the aggregation order, as defined by getSchema().
+	 * 
+	 * @param row: the row to be inserted.
+	 */
+	public void insert(PositionalRow<V> row) {
+		this.verifyWritable();
+		this.insertEncoded(this.schema.encode(this.labelValues(row, "inserted")), row.getValue());
+	}
 
-				// after a new element is inserted the cache is invalidated
-				this.invalidateCache();
-			} else {
-				throw new IllegalArgumentException(
-						"The inserted row misses a value for an aggregation dimension: " + row);
+	/**
+	 * Insert a value into the aggregation tree given the codes of its label values.
+	 * If caching of previously queried aggregations is enabled, this method
+	 * invalidates the cached aggregations of the nodes on the path of the new
+	 * value, leaving the other nodes untouched.
+	 * 
+	 * @param codes: the codes of the label values, one for each dimension of the
+	 *        aggregation order, as assigned by the dictionaries of getSchema().
+	 * @param value: the value to be inserted.
+	 */
+	public void insertEncoded(int[] codes, V value) {
+		this.verifyWritable();
+		this.verifyEncoded(codes, value);
+		if (this.writeAheadLog != null) {
+			String[] labelValues = new String[codes.length];
+			for (int i = 0; i < codes.length; i++) {
+				labelValues[i] = this.schema.getDictionary(i).decode(codes[i]);
 			}
-		} else {
-			throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+			this.writeAheadLog.append(labelValues, value);
 		}
+		this.root = this.writable(null, this.root);
+		// the cached aggregations of the nodes on the path are invalidated
+		this.invalidateCache(this.root);
+		this.accumulate(this.root, value);
+		this.descend(this.root, codes, 0, value, true);
+	}
+
+	/**
+	 * Delete a row from the aggregation tree: the first value equal to the value
+	 * of the row is removed from the deepest group of the row, and the groups
+	 * left empty are pruned. The partial states on the path of the row are
+	 * updated in O(depth) when the aggregator is an InvertibleAggregator, while
+	 * otherwise each of them is recomputed by merging the partial states of the
+	 * childs of its node. If caching of previously queried aggregations is
+	 * enabled, only the cached aggregations of the nodes on the path are
+	 * invalidated.
+	 * 
+	 * A coalescing tree does not store its values, thus rows can only be deleted
+	 * from it if its aggregator is invertible, and whether the deleted row was
+	 * inserted cannot be verified: deleting a row that was not inserted into an
+	 * existing group corrupts the aggregations on its path. The deletion is only
+	 * refused when the group is missing, or when the aggregator can tell that
+	 * the value cannot be retracted, as a count that would go negative.
+	 * 
+	 * @param row: the row to be deleted.
+	 * 
+	 * @return true if the row was found and deleted, false otherwise.
+	 */
+	public boolean delete(Row<V> row) {
+		this.verifyWritable();
+		return this.delete(this.labelValues(row, "deleted"), row.getValue());
+	}
+
+	/**
+	 * Delete a positional row from the aggregation tree, as in delete(Row<V>
+	 * row). The label values of the row must follow the aggregation order, as
+	 * defined by getSchema().
+	 * 
+	 * @param row: the row to be deleted.
+	 * 
+	 * @return true if the row was found and deleted, false otherwise.
+	 */
+	public boolean delete(PositionalRow<V> row) {
+		this.verifyWritable();
+		return this.delete(this.labelValues(row, "deleted"), row.getValue());
+	}
+
+	/**
+	 * Replace a row of the aggregation tree with a corrected one. The old row is
+	 * deleted as in delete(Row<V> row) and, if it was found, the new row is
+	 * inserted.
+	 * 
+	 * @param oldRow: the row to be deleted.
+	 * @param newRow: the row to be inserted in place of the old one.
+	 * 
+	 * @return true if the old row was found and replaced, false otherwise.
+	 */
+	public boolean update(Row<V> oldRow, Row<V> newRow) {
+		this.verifyWritable();
+		String[] newLabelValues = this.labelValues(newRow, "inserted");
+		if (this.delete(this.labelValues(oldRow, "deleted"), oldRow.getValue())) {
+			this.insertEncoded(this.schema.encode(newLabelValues), newRow.getValue());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Replace a positional row of the aggregation tree with a corrected one, as
+	 * in update(Row<V> oldRow, Row<V> newRow).
+	 * 
+	 * @param oldRow: the row to be deleted.
+	 * @param newRow: the row to be inserted in place of the old one.
+	 * 
+	 * @return true if the old row was found and replaced, false otherwise.
+	 */
+	public boolean update(PositionalRow<V> oldRow, PositionalRow<V> newRow) {
+		this.verifyWritable();
+		String[] newLabelValues = this.labelValues(newRow, "inserted");
+		if (this.delete(this.labelValues(oldRow, "deleted"), oldRow.getValue())) {
+			this.insertEncoded(this.schema.encode(newLabelValues), newRow.getValue());
+			return true;
+		}
+		return false;
 	}
 
 	/**
@@ -125,17 +416,7 @@ public class AggregationTree<V, R> {
 	 * @return the aggregated value for the specified aggregation level.
 	 */
 	public R get(String... labelValues) {
-		if (labelValues.length > this.labelsOrder.size()) {
-			throw new IllegalArgumentException("The provided query specifies too many labels.");
-		} else {
-			LinkedHashMap<String, String> query = new LinkedHashMap<String, String>();
-			Iterator<String> orderIter = this.labelsOrder.iterator();
-			for (int i = 0; i < labelValues.length; i++) {
-				query.put(orderIter.next(), labelValues[i]);
-			}
-			return this.get(query);
-		}
-
+		return this.aggregate(this.find(labelValues));
 	}
 
 	/**
@@ -148,36 +429,427 @@ public class AggregationTree<V, R> {
 	 * @return the aggregated value for the specified aggregation level.
 	 */
 	public R get(LinkedHashMap<String, String> query) {
-		try {
-			if (this.verifyGet(query.keySet())) {
-				Composite<V> currentNode = root;
-				for (String label : query.keySet()) {
-					Boolean found = false;
-					Iterator<Node<V>> childIter = currentNode.getChilds().iterator();
-					while (childIter.hasNext() && !found) {
-						Composite<V> child = (Composite<V>) childIter.next();
-						if (child.getLabel().equals(query.get(label))) {
-							currentNode = child;
-							found = true;
-						}
-					}
-					if (!found) {
-						throw new IllegalArgumentException(
-								"The provided query specifies a missing label value: " + query.get(label));
-					}
+		return this.aggregate(this.find(query));
+	}
+
+	/**
+	 * Retrieves the aggregated value of every group at a given depth of the
+	 * aggregation order, visiting the tree once. Depth 0 is the group of all the
+	 * values, depth 1 the groups of the first dimension, and so on.
+	 * 
+	 * @param depth: the number of dimensions defining the groups.
+	 * 
+	 * @return the aggregated values, keyed by the label values of their groups, in
+	 *         depth-first order.
+	 */
+	public Map<List<String>, R> groupBy(int depth) {
+		if (depth < 0 || depth > this.schema.size()) {
+			throw new IllegalArgumentException("The requested depth is not part of the aggregation order.");
+		}
+		Map<List<String>, R> groups = new LinkedHashMap<List<String>, R>();
+		this.groupBy(this.root, new String[depth], 0, depth, depth, groups);
+		return groups;
+	}
+
+	/**
+	 * Retrieves the aggregated value of every group at every depth of the
+	 * aggregation order, visiting the tree once.
+	 * 
+	 * @return the aggregated values, keyed by the label values of their groups, in
+	 *         depth-first order, each group preceding its subgroups.
+	 */
+	public Map<List<String>, R> groupByAll() {
+		Map<List<String>, R> groups = new LinkedHashMap<List<String>, R>();
+		this.groupBy(this.root, new String[this.schema.size()], 0, 0, this.schema.size(), groups);
+		return groups;
+	}
+
+	/**
+	 * Ranks the childs of an aggregation level by their aggregated values. The
+	 * aggregated value of each child is computed once, out of its partial state
+	 * when the tree uses an aggregator, and the best k childs are kept in a heap
+	 * of size k, so that the ranking takes time proportional to the number of
+	 * childs of the aggregation level.
+	 * 
+	 * @param k: the number of childs to be returned.
+	 * @param comparator: the ordering of the aggregated values, the greatest
+	 *        values being ranked first. Null aggregated values are ranked after
+	 *        all the others.
+	 * @param prefix: A list of labels defining the aggregation level whose childs
+	 *        are ranked, as in get(String... labelValues).
+	 * 
+	 * @return the aggregated values of at most k childs, keyed by their label
+	 *         values, from the greatest to the smallest.
+	 */
+	public Map<String, R> topK(int k, Comparator<? super R> comparator, String... prefix) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("The number of childs to be returned must be positive.");
+		}
+		Composite<V> node = this.find(prefix);
+		// the smallest of the best childs found so far is at the head
+		Comparator<Map.Entry<String, R>> order = Map.Entry.comparingByValue(Comparator.nullsFirst(comparator));
+		PriorityQueue<Map.Entry<String, R>> best = new PriorityQueue<Map.Entry<String, R>>(
+				Math.min(k, node.getCompositeChilds().size()) + 1, order);
+		for (Composite<V> child : node.getCompositeChilds()) {
+			Map.Entry<String, R> entry = new AbstractMap.SimpleImmutableEntry<String, R>(child.getLabel(),
+					this.aggregate(child));
+			if (best.size() < k) {
+				best.add(entry);
+			} else if (order.compare(entry, best.peek()) > 0) {
+				best.poll();
+				best.add(entry);
+			}
+		}
+		List<Map.Entry<String, R>> ranked = new ArrayList<Map.Entry<String, R>>(best);
+		ranked.sort(order.reversed());
+		Map<String, R> top = new LinkedHashMap<String, R>();
+		for (Map.Entry<String, R> entry : ranked) {
+			top.put(entry.getKey(), entry.getValue());
+		}
+		return top;
+	}
+
+	/**
+	 * Declares the order of the label values of a dimension. The childs of the
+	 * nodes of an ordered dimension are enumerated in order by groupBy and
+	 * printTree, and can be filtered by range or by prefix of their label values
+	 * through getRange and getPrefixed.
+	 * 
+	 * getPrefixed only finds the childs through the order when the comparator is
+	 * the one returned by Comparator.naturalOrder(): an equivalent comparator,
+	 * such as String::compareTo, must be declared through setOrder(String
+	 * dimension, Comparator<? super String> comparator, boolean prefixOrdered).
+	 * 
+	 * @param dimension: the dimension to be ordered.
+	 * @param comparator: the order of the label values, consistent with equals,
+	 *        e.g. Comparator.naturalOrder(), or null to remove the order.
+	 */
+	public void setOrder(String dimension, Comparator<? super String> comparator) {
+		this.setOrder(dimension, comparator, comparator == Comparator.<String>naturalOrder());
+	}
+
+	/**
+	 * Declares the order of the label values of a dimension, as in
+	 * setOrder(String dimension, Comparator<? super String> comparator).
+	 * 
+	 * @param dimension: the dimension to be ordered.
+	 * @param comparator: the order of the label values, consistent with equals,
+	 *        or null to remove the order.
+	 * @param prefixOrdered: whether the label values starting with a same prefix
+	 *        are contiguous in the order, as in the natural order, so that
+	 *        getPrefixed can find them through the order.
+	 */
+	public void setOrder(String dimension, Comparator<? super String> comparator, boolean prefixOrdered) {
+		int index = this.schema.indexOf(dimension);
+		if (index < 0) {
+			throw new IllegalArgumentException("The dimension is not part of the aggregation order: " + dimension);
+		}
+		this.orders[index] = comparator == null ? null
+				: new LabelOrder(this.schema.getDictionary(index), comparator, prefixOrdered);
+	}
+
+	/**
+	 * Retrieves the aggregated value of the childs of an aggregation level whose
+	 * label values are within a range, e.g. the months between 2026-01 and
+	 * 2026-03 of germany. The childs are found through the order of their
+	 * dimension, and their partial states are merged when the tree uses an
+	 * aggregator.
+	 * 
+	 * @param from: the lowest label value, inclusive, or null for no lower bound.
+	 * @param to: the highest label value, inclusive, or null for no upper bound.
+	 *        A range whose lowest value is above its highest one matches no
+	 *        child.
+	 * @param prefix: A list of labels defining the aggregation level whose childs
+	 *        are filtered, as in get(String... labelValues).
+	 * 
+	 * @return the aggregated value of the matching childs.
+	 */
+	public R getRange(String from, String to, String... prefix) {
+		Composite<V> node = this.find(prefix);
+		LabelOrder order = this.order(prefix.length);
+		int fanout = node.getCompositeChilds().size();
+		int[] codes = order.range(from, to, fanout);
+		List<Composite<V>> childs = new ArrayList<Composite<V>>();
+		if (codes != null) {
+			this.collect(node, codes, childs);
+		} else {
+			for (Composite<V> child : node.getCompositeChilds()) {
+				if (order.contains(from, to, child.getLabel())) {
+					childs.add(child);
+				}
+			}
+		}
+		return this.aggregate(childs);
+	}
+
+	/**
+	 * Retrieves the aggregated value of the childs of an aggregation level whose
+	 * label values start with a given prefix, e.g. the days of 2026-01. With the
+	 * natural order the childs are found through the order of their dimension,
+	 * otherwise the childs are filtered one by one.
+	 * 
+	 * @param labelPrefix: the beginning of the label values of the childs.
+	 * @param prefix: A list of labels defining the aggregation level whose childs
+	 *        are filtered, as in get(String... labelValues).
+	 * 
+	 * @return the aggregated value of the matching childs.
+	 */
+	public R getPrefixed(String labelPrefix, String... prefix) {
+		Composite<V> node = this.find(prefix);
+		LabelOrder order = this.order(prefix.length);
+		int fanout = node.getCompositeChilds().size();
+		int[] codes = order.prefixed(labelPrefix, fanout);
+		List<Composite<V>> childs = new ArrayList<Composite<V>>();
+		if (codes != null) {
+			this.collect(node, codes, childs);
+		} else {
+			for (Composite<V> child : node.getCompositeChilds()) {
+				if (child.getLabel().startsWith(labelPrefix)) {
+					childs.add(child);
 				}
+			}
+		}
+		return this.aggregate(childs);
+	}
 
-				List<V> toAggregate = currentNode.getValue();
-				return this.aggregationFunction.apply(toAggregate);
+	/**
+	 * Retrieves the aggregated values of a batch of queries, as in get(String...
+	 * labelValues). Consecutive queries sharing a prefix reuse the nodes found for
+	 * it, so sorting the queries maximizes the shared work.
+	 * 
+	 * @param queries: the label values of the queries.
+	 * 
+	 * @return the aggregated values, keyed by the label values of their queries,
+	 *         in the order of the queries.
+	 */
+	public Map<List<String>, R> getAll(Collection<String[]> queries) {
+		Map<List<String>, R> results = new LinkedHashMap<List<String>, R>();
+		// nodes on the path of the previous query
+		Composite<V>[] path = this.newPath();
+		String[] previous = new String[0];
+		for (String[] query : queries) {
+			if (query.length > this.schema.size()) {
+				throw new IllegalArgumentException("The provided query specifies too many labels.");
+			}
+			int shared = 0;
+			while (shared < query.length && shared < previous.length && Objects.equals(query[shared], previous[shared])) {
+				shared = shared + 1;
+			}
+			for (int i = shared; i < query.length; i++) {
+				int code = this.schema.getDictionary(i).lookup(query[i]);
+				path[i + 1] = code == Dictionary.MISSING ? null : path[i].getChild(code);
+				if (path[i + 1] == null) {
+					throw new IllegalArgumentException(
+						"The provided query specifies a missing label value: " + query[i]);
+				}
+			}
+			results.put(Arrays.asList(query.clone()), this.aggregate(path[query.length]));
+			previous = query;
+		}
+		return results;
+	}
 
+	/**
+	 * Retrieves the aggregated value of the rows matching the label values of any
+	 * subset of the dimensions, such as {eyes: blue, hair: black}, regardless of
+	 * the aggregation order. The deepest groups matching every label value are
+	 * found by intersecting the inverted indexes of the dimensions, and only those
+	 * groups are aggregated.
+	 * 
+	 * @param filter: the label values the rows must have, keyed by dimension.
+	 * 
+	 * @return the aggregated value.
+	 */
+	public R slice(Map<String, String> filter) {
+		BitSet matching = null;
+		for (Map.Entry<String, String> entry : filter.entrySet()) {
+			int dimension = this.schema.indexOf(entry.getKey());
+			if (dimension < 0) {
+				throw new IllegalArgumentException(
+						"The provided query specifies an unknown dimension: " + entry.getKey());
+			}
+			int code = this.schema.getDictionary(dimension).lookup(entry.getValue());
+			BitSet groups = code == Dictionary.MISSING ? null : this.sliceIndex.groups(dimension, code);
+			if (groups == null) {
+				throw new IllegalArgumentException(
+						"The provided query specifies a missing label value: " + entry.getValue());
+			}
+			if (matching == null) {
+				matching = (BitSet) groups.clone();
 			} else {
-				throw new IllegalArgumentException("The provided query is not a prefix of the ordering.");
+				matching.and(groups);
 			}
-		} catch (TooManyLabelsInQueryException e) {
-			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		}
+		if (matching == null) {
+			return this.get();
+		}
+
+		Object partial = this.aggregator != null ? this.aggregator.init() : null;
+		List<V> values = this.aggregator != null ? null : new ArrayList<V>();
+		for (int group = matching.nextSetBit(0); group >= 0; group = matching.nextSetBit(group + 1)) {
+			Composite<V> node = this.resolve(this.sliceIndex.path(group));
+			if (node != null) {
+				if (this.aggregator != null) {
+					partial = this.aggregator.merge(partial, node.getPartial());
+				} else {
+					node.forEachValue(values::add);
+				}
+			}
+		}
+		return this.aggregator != null ? this.aggregator.finish(partial) : this.aggregationFunction.apply(values);
+	}
+
+	/**
+	 * Retrieves the values stored for a specified aggregation level, without
+	 * copying them. The returned collection is a lazy view that can be iterated
+	 * or streamed, and that reflects the rows inserted after its creation until a
+	 * snapshot of the tree is taken.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level, as in
+	 *        get(String... labelValues).
+	 * 
+	 * @return the values stored for the specified aggregation level.
+	 */
+	public Collection<V> values(String... labelValues) {
+		return this.find(labelValues).values();
+	}
+
+	/**
+	 * Returns a read-only view of the tree as it is now, in constant time. The
+	 * snapshot shares its nodes with the tree: the nodes on the path of a row
+	 * inserted afterwards are copied before being modified, so the snapshot keeps
+	 * answering every query as of the moment it was taken, while inserts proceed
+	 * without waiting for its readers. Inserting into a snapshot throws an
+	 * UnsupportedOperationException. Snapshots do not cache aggregations unless
+	 * caching is enabled on them.
+	 * 
+	 * @return the snapshot of the tree.
+	 */
+	public AggregationTree<V, R> snapshot() {
+		AggregationTree<V, R> snapshot = new AggregationTree<V, R>(this);
+		this.epoch = this.epoch + 1;
+		return snapshot;
+	}
+
+	/**
+	 * @return true if this tree is a snapshot, which cannot be modified.
+	 */
+	public boolean isReadOnly() {
+		return this.readOnly;
+	}
+
+	/**
+	 * Attaches a write-ahead log to the tree: from now on, every row accepted by
+	 * the tree is appended to the log before the tree is modified. The log must
+	 * have been replayed into the tree beforehand, if needed.
+	 * 
+	 * @param writeAheadLog: the log, or null to stop logging the inserted rows.
+	 */
+	public void setWriteAheadLog(WriteAheadLog<V> writeAheadLog) {
+		this.verifyWritable();
+		this.writeAheadLog = writeAheadLog;
+	}
+
+	public WriteAheadLog<V> getWriteAheadLog() {
+		return this.writeAheadLog;
+	}
+
+	/**
+	 * Saves the tree to a binary file, without the partial states of its
+	 * aggregator, which are computed again when the file is opened.
+	 * 
+	 * @param output: the file to be written.
+	 * @param valueCodec: the codec writing the values.
+	 * @see #save(File, Codec, Codec)
+	 */
+	public void save(File output, Codec<V> valueCodec) {
+		this.save(output, valueCodec, null);
+	}
+
+	/**
+	 * Saves the tree to a binary file containing the aggregation order, the
+	 * dictionaries, the nodes, the values and the partial states of the
+	 * aggregator. The file can be reopened through open().
+	 * 
+	 * @param output: the file to be written.
+	 * @param valueCodec: the codec writing the values.
+	 * @param partialCodec: the codec writing the partial states of the aggregator,
+	 *        or null to leave them out of the file.
+	 */
+	@SuppressWarnings("unchecked")
+	public void save(File output, Codec<V> valueCodec, Codec<?> partialCodec) {
+		if (this.coalescing && partialCodec == null) {
+			throw new IllegalArgumentException("Saving a coalescing tree requires a codec for the partial states.");
+		}
+		try {
+			TreeFile.write(output, this.root, this.schema, this.coalescing, valueCodec,
+					this.aggregator == null ? null : (Codec<Object>) partialCodec);
+		} catch (IOException e) {
+			throw new RuntimeException("Problem saving the aggregation tree to the provided path.", e);
 		}
 	}
 
+	/**
+	 * Opens a tree saved through save(). The nodes are read upfront, while the
+	 * file stays memory mapped and the values of every deepest group are only
+	 * decoded when first needed. A coalescing tree cannot be opened this way,
+	 * since it does not store the values the function aggregates.
+	 * 
+	 * @param input: the file to be read.
+	 * @param aggregationFunction: the aggregation function of the tree.
+	 * @param valueCodec: the codec reading the values.
+	 * 
+	 * @return the tree.
+	 */
+	public static <V, R> AggregationTree<V, R> open(File input, Function<List<V>, R> aggregationFunction,
+			Codec<V> valueCodec) {
+		TreeFile<V> file = read(input, valueCodec, null);
+		if (file.coalescing) {
+			throw new IllegalArgumentException("The coalescing tree cannot be opened with an aggregation function.");
+		}
+		AggregationTree<V, R> tree = new AggregationTree<V, R>(aggregationFunction, file.labelsOrder);
+		tree.restore(file);
+		return tree;
+	}
+
+	/**
+	 * Opens a tree saved through save(). The nodes and the partial states of the
+	 * aggregator are read upfront, so that aggregations can be queried at once,
+	 * while the file stays memory mapped and the values of every deepest group are
+	 * only decoded when first needed. If the file does not contain the partial
+	 * states, or no codec is provided for them, they are computed from the values.
+	 * 
+	 * @param input: the file to be read.
+	 * @param aggregator: the aggregator of the tree.
+	 * @param valueCodec: the codec reading the values.
+	 * @param partialCodec: the codec reading the partial states of the aggregator,
+	 *        or null.
+	 * 
+	 * @return the tree.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V, A, R> AggregationTree<V, R> open(File input, Aggregator<V, A, R> aggregator,
+			Codec<V> valueCodec, Codec<A> partialCodec) {
+		TreeFile<V> file = read(input, valueCodec, (Codec<Object>) partialCodec);
+		if (file.coalescing && !file.hasPartials) {
+			throw new IllegalArgumentException("The coalescing tree cannot be opened without its partial states.");
+		}
+		AggregationTree<V, R> tree = new AggregationTree<V, R>(aggregator, file.labelsOrder);
+		tree.restore(file);
+		if (!file.hasPartials) {
+			tree.computePartial(tree.root);
+		}
+		return tree;
+	}
+
+	/**
+	 * @return the schema defining the dimensions of the aggregation order and the
+	 *         dictionaries encoding their values.
+	 */
+	public Schema getSchema() {
+		return this.schema;
+	}
+
 	/**
 	 * Builds a tree-like representation of the AggreationTree to be printed for
 	 * visualization purpose.
@@ -186,40 +858,526 @@ public class AggregationTree<V, R> {
 	 *         AggregationTree.
 	 */
 	public String printTree() {
-		return this.root.printPretty("", true);
+		List<Comparator<Composite<V>>> childOrders = new ArrayList<Comparator<Composite<V>>>();
+		for (LabelOrder order : this.orders) {
+			childOrders.add(order == null ? null : Comparator.comparing(Composite::getLabel, order.getComparator()));
+		}
+		return this.root.printPretty("", true, childOrders, 0);
 	}
 
 	/**
-	 * Enables and disables caching of previously queried results.
+	 * Enables and disables caching of previously queried results. When enabled
+	 * without having provided a cache through setQueryCache, the last
+	 * DEFAULT_CACHE_SIZE queried results are kept.
 	 * 
 	 * @param caching: true if caching has to be enabled, false otherwise.
 	 * 
 	 */
 	public void setCaching(Boolean caching) {
-		this.root.setCaching(caching);
+		if (!caching) {
+			this.queryCache = null;
+		} else if (this.queryCache == null) {
+			this.queryCache = new LruQueryCache<R>(DEFAULT_CACHE_SIZE);
+		}
+	}
+
+	/**
+	 * Enables caching of previously queried results using the given cache, which
+	 * defines the budget and the eviction policy of the cache.
+	 * 
+	 * @param queryCache: the cache to be used, or null to disable caching.
+	 */
+	public void setQueryCache(QueryCache<R> queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	public QueryCache<R> getQueryCache() {
+		return this.queryCache;
+	}
+
+	/**
+	 * @return the hit, miss and eviction counters of the cache, or null if caching
+	 *         is disabled.
+	 */
+	public CacheStats getCacheStats() {
+		return this.queryCache == null ? null : this.queryCache.getStats();
+	}
+
+	/**
+	 * Enables and disables coalescing of the inserted values. When enabled, the
+	 * inserted values only update the partial states kept by the aggregator and
+	 * are not stored in the tree, thus they are not part of the collections
+	 * returned by values(String... labelValues). Coalescing requires the tree to
+	 * be created with an Aggregator.
+	 * 
+	 * @param coalescing: true if coalescing has to be enabled, false otherwise.
+	 */
+	public void setCoalescing(Boolean coalescing) {
+		this.verifyWritable();
+		if (coalescing && this.aggregator == null) {
+			throw new IllegalStateException("Coalescing requires a decomposable aggregator.");
+		}
+		this.coalescing = coalescing;
+	}
+
+	/**
+	 * Retrieves the partial state of the aggregator for a specified aggregation
+	 * level, which must not be modified.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level, as in
+	 *        get(String... labelValues).
+	 * 
+	 * @return the partial state, or null if there is no such aggregation level.
+	 */
+	Object getPartial(String... labelValues) {
+		Composite<V> currentNode = this.root;
+		for (int i = 0; i < labelValues.length && currentNode != null; i++) {
+			int code = this.schema.getDictionary(i).lookup(labelValues[i]);
+			currentNode = code == Dictionary.MISSING ? null : currentNode.getChild(code);
+		}
+		return currentNode == null ? null : currentNode.getPartial();
 	}
 
 	// private methods
 
-	private void invalidateCache() {
-		if (this.root.getCaching()) {
-			this.root.setCaching(false);
-			this.root.setCaching(true);
+	private R aggregate(Composite<V> node) {
+		if (this.queryCache != null) {
+			R cached = this.queryCache.get(node);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		R result;
+		if (this.aggregator != null) {
+			result = this.aggregator.finish(node.getPartial());
+		} else {
+			List<V> toAggregate = node.getValue();
+			result = this.aggregationFunction.apply(toAggregate);
+		}
+		if (this.queryCache != null) {
+			this.queryCache.put(node, result);
+		}
+		return result;
+	}
+
+	// collects the groups between the given depths below a node, whose label
+	// values up to its depth are in the path
+	private void groupBy(Composite<V> node, String[] path, int depth, int from, int to,
+			Map<List<String>, R> groups) {
+		if (depth >= from) {
+			groups.put(Arrays.asList(Arrays.copyOf(path, depth)), this.aggregate(node));
+		}
+		if (depth < to) {
+			for (Composite<V> child : this.childs(node, depth)) {
+				path[depth] = child.getLabel();
+				this.groupBy(child, path, depth + 1, from, to, groups);
+			}
+		}
+	}
+
+	// the childs of a node at a given depth, in the order of their dimension if
+	// it has one
+	private Collection<Composite<V>> childs(Composite<V> node, int depth) {
+		LabelOrder order = this.orders[depth];
+		if (order == null) {
+			return node.getCompositeChilds();
+		}
+		List<Composite<V>> childs = new ArrayList<Composite<V>>(node.getCompositeChilds());
+		childs.sort(Comparator.comparing(Composite::getLabel, order.getComparator()));
+		return childs;
+	}
+
+	// the order of the dimension of the childs of the nodes at a given depth
+	private LabelOrder order(int depth) {
+		if (depth >= this.schema.size()) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		}
+		if (this.orders[depth] == null) {
+			throw new IllegalStateException(
+					"The dimension has no declared order: " + this.schema.getDimension(depth));
+		}
+		return this.orders[depth];
+	}
+
+	// the childs of a node having the given codes
+	private void collect(Composite<V> node, int[] codes, List<Composite<V>> childs) {
+		for (int code : codes) {
+			Composite<V> child = node.getChild(code);
+			if (child != null) {
+				childs.add(child);
+			}
+		}
+	}
+
+	// aggregates the values below a set of nodes, merging their partial states
+	// when the tree uses an aggregator
+	private R aggregate(List<Composite<V>> nodes) {
+		if (this.aggregator != null) {
+			Object partial = this.aggregator.init();
+			for (Composite<V> node : nodes) {
+				partial = this.aggregator.merge(partial, node.getPartial());
+			}
+			return this.aggregator.finish(partial);
+		}
+		List<V> values = new ArrayList<V>();
+		for (Composite<V> node : nodes) {
+			node.forEachValue(values::add);
+		}
+		return this.aggregationFunction.apply(values);
+	}
+
+	// the deepest group with the given codes, or null if it is not in this tree,
+	// as for groups created after a snapshot
+	private Composite<V> resolve(int[] codes) {
+		Composite<V> node = this.root;
+		for (int i = 0; i < codes.length && node != null; i++) {
+			node = node.getChild(codes[i]);
+		}
+		return node;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Composite<V>[] newPath() {
+		Composite<V>[] path = (Composite<V>[]) new Composite<?>[this.schema.size() + 1];
+		path[0] = this.root;
+		return path;
+	}
+
+	// walks the tree down to the node identified by the label values
+	private Composite<V> find(String... labelValues) {
+		if (labelValues.length > this.schema.size()) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		} else {
+			Composite<V> currentNode = root;
+			for (int i = 0; i < labelValues.length; i++) {
+				int code = this.schema.getDictionary(i).lookup(labelValues[i]);
+				Composite<V> child = code == Dictionary.MISSING ? null : currentNode.getChild(code);
+				if (child == null) {
+					throw new IllegalArgumentException(
+							"The provided query specifies a missing label value: " + labelValues[i]);
+				}
+				currentNode = child;
+			}
+			return currentNode;
+		}
+	}
+
+	private Composite<V> find(LinkedHashMap<String, String> query) {
+		try {
+			if (this.verifyGet(query.keySet())) {
+				return this.find(query.values().toArray(new String[query.size()]));
+			} else {
+				throw new IllegalArgumentException("The provided query is not a prefix of the ordering.");
+			}
+		} catch (TooManyLabelsInQueryException e) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <A> Aggregator<V, Object, R> erase(Aggregator<V, A, R> aggregator) {
+		return (Aggregator<V, Object, R>) aggregator;
+	}
+
+	private void invalidateCache(Composite<V> node) {
+		if (this.queryCache != null) {
+			this.queryCache.invalidate(node);
+		}
+	}
+
+	private Composite<V> newNode(String label, int code) {
+		Composite<V> node = new Composite<V>(label, code);
+		node.setEpoch(this.epoch);
+		if (this.aggregator != null) {
+			node.setPartial(this.aggregator.init());
+		}
+		return node;
+	}
+
+	private static <V> TreeFile<V> read(File input, Codec<V> valueCodec, Codec<Object> partialCodec) {
+		try {
+			return TreeFile.read(input, valueCodec, partialCodec);
+		} catch (IOException e) {
+			throw new RuntimeException(
+					"Problem opening the aggregation tree file. Make sure it exists at the provided path.", e);
+		}
+	}
+
+	// the dictionaries are filled in the order of their codes, so that the codes
+	// of the file are preserved
+	private void restore(TreeFile<V> file) {
+		for (int i = 0; i < file.dictionaries.length; i++) {
+			for (String value : file.dictionaries[i]) {
+				this.schema.getDictionary(i).encode(value);
+			}
+		}
+		this.root = file.root;
+		this.coalescing = file.coalescing;
+		this.index(this.root, new int[this.schema.size()], 0);
+	}
+
+	private void index(Composite<V> node, int[] codes, int depth) {
+		if (depth == codes.length) {
+			if (depth > 0) {
+				this.sliceIndex.add(codes);
+			}
+		} else {
+			for (Composite<V> child : node.getCompositeChilds()) {
+				codes[depth] = child.getCode();
+				this.index(child, codes, depth + 1);
+			}
+		}
+	}
+
+	private Object computePartial(Composite<V> node) {
+		for (Composite<V> child : node.getCompositeChilds()) {
+			this.computePartial(child);
+		}
+		node.setPartial(this.recompute(node));
+		return node.getPartial();
+	}
+
+	// the partial state of a node out of its own values and the partial states of
+	// its childs, which are not recomputed
+	private Object recompute(Composite<V> node) {
+		Object partial = this.aggregator.init();
+		if (node.getLeaf() != null) {
+			for (V value : node.getLeaf().getValue()) {
+				partial = this.aggregator.accumulate(partial, value);
+			}
+		}
+		for (Composite<V> child : node.getCompositeChilds()) {
+			partial = this.aggregator.merge(partial, child.getPartial());
+		}
+		return partial;
+	}
+
+	// removes a value from the deepest group with the given label values,
+	// returning false if the group or the value is not in the tree
+	@SuppressWarnings("unchecked")
+	private boolean delete(String[] labelValues, V value) {
+		boolean invertible = this.aggregator instanceof InvertibleAggregator;
+		if (this.coalescing && !invertible) {
+			throw new IllegalStateException("Deleting from a coalescing tree requires an invertible aggregator.");
+		}
+		int depth = labelValues.length;
+		int[] codes = new int[depth];
+		Composite<V>[] path = this.newPath();
+		for (int i = 0; i < depth; i++) {
+			codes[i] = this.schema.getDictionary(i).lookup(labelValues[i]);
+			path[i + 1] = codes[i] == Dictionary.MISSING ? null : path[i].getChild(codes[i]);
+			if (path[i + 1] == null) {
+				return false;
+			}
+		}
+		Leaf<V> leaf = path[depth].getLeaf();
+		if (!this.coalescing && (leaf == null || !leaf.getValue().contains(value))) {
+			return false;
+		}
+		if (this.coalescing && !((InvertibleAggregator<V, Object, R>) this.aggregator)
+				.canRetract(path[depth].getPartial(), value)) {
+			return false;
+		}
+		if (this.writeAheadLog != null) {
+			this.writeAheadLog.delete(labelValues, value);
+		}
+
+		this.root = this.writable(null, this.root);
+		path[0] = this.root;
+		this.invalidateCache(this.root);
+		for (int i = 0; i < depth; i++) {
+			path[i + 1] = this.writable(path[i], path[i + 1]);
+			this.invalidateCache(path[i + 1]);
+		}
+		path[depth].removeValue(value);
+
+		// the groups left empty are pruned, except for the root
+		int kept = depth;
+		while (!this.coalescing && kept > 0 && path[kept].getCompositeChilds().isEmpty()
+				&& (path[kept].getLeaf() == null || path[kept].getLeaf().size() == 0)) {
+			path[kept - 1].removeChild(codes[kept - 1]);
+			// the pruned node is not reachable anymore, but a cached entry would
+			// keep it alive
+			this.invalidateCache(path[kept]);
+			if (kept == depth) {
+				this.sliceIndex.remove(codes);
+			}
+			kept = kept - 1;
+		}
+
+		if (invertible) {
+			InvertibleAggregator<V, Object, R> inverse = (InvertibleAggregator<V, Object, R>) this.aggregator;
+			for (int i = 0; i <= kept; i++) {
+				path[i].setPartial(inverse.retract(path[i].getPartial(), value));
+			}
+		} else if (this.aggregator != null) {
+			for (int i = kept; i >= 0; i--) {
+				path[i].setPartial(this.recompute(path[i]));
+			}
+		}
+		return true;
+	}
+
+	// returns the node itself if it is not shared with a snapshot, otherwise a copy
+	// of the node replacing it in its parent, or as the root if it has no parent
+	private Composite<V> writable(Composite<V> parent, Composite<V> node) {
+		return this.writable(parent, node, true);
+	}
+
+	// as writable(parent, node), invalidating the cached aggregation of the copied
+	// node only if requested, since the cache is not thread-safe
+	private Composite<V> writable(Composite<V> parent, Composite<V> node, boolean invalidate) {
+		if (node.getEpoch() == this.epoch) {
+			return node;
+		}
+		Composite<V> copy = new Composite<V>(node);
+		copy.setEpoch(this.epoch);
+		if (this.aggregator != null) {
+			// merge never modifies its second argument
+			copy.setPartial(this.aggregator.merge(this.aggregator.init(), node.getPartial()));
+		}
+		// the original node is only reachable from snapshots from now on
+		if (invalidate) {
+			this.invalidateCache(node);
+		}
+		if (parent != null) {
+			parent.addChild(copy);
 		}
+		return copy;
 	}
 
-	// a row being inserted must contain all the labels in the ordering
-	private Boolean verifyInsert(Set<String> labels) {
+	private void verifyWritable() {
+		if (this.readOnly) {
+			throw new UnsupportedOperationException("The snapshot of an aggregation tree is read-only.");
+		}
+	}
+
+	// when a decomposable aggregator is used, each node on the insertion path
+	// keeps its partial state up to date
+	private void accumulate(Composite<V> node, V value) {
+		if (this.aggregator != null) {
+			node.setPartial(this.aggregator.accumulate(node.getPartial(), value));
+		}
+	}
+
+	// creates the child of a node for the code of the given level, registering
+	// the groups of the deepest level in the slice index
+	private Composite<V> addChild(Composite<V> parent, int[] codes, int level) {
+		Composite<V> child = this.newNode(this.schema.getDictionary(level).decode(codes[level]), codes[level]);
+		parent.addChild(child);
+		if (level == this.schema.size() - 1) {
+			this.sliceIndex.add(codes);
+		}
+		return child;
+	}
+
+	// descends the path given by the codes starting from the specified level,
+	// creating the missing nodes and accumulating the value into each of them
+	private void descend(Composite<V> node, int[] codes, int from, V value, boolean invalidate) {
+		Composite<V> currentNode = node;
+		for (int i = from; i < codes.length; i++) {
+			Composite<V> child = currentNode.getChild(codes[i]);
+
+			if (child != null) {
+				child = this.writable(currentNode, child, invalidate);
+			} else {
+				child = this.addChild(currentNode, codes, i);
+			}
+			currentNode = child;
+			if (invalidate) {
+				this.invalidateCache(currentNode);
+			}
+			this.accumulate(currentNode, value);
+		}
+		if (!this.coalescing) {
+			currentNode.addValue(value);
+		}
+	}
+
+	// builds the subtree of a first level node, keeping the partial state of the
+	// loaded values to be merged into the root and the number of loaded rows up
+	// to date after each row, so that they are known even if a row fails. The
+	// value is accumulated into the delta first, so that a value rejected by the
+	// aggregator leaves the subtree untouched. The cache is cleared by the calling
+	// thread once the load is completed.
+	private void loadPartition(Composite<V> subtree, List<Row<V>> partition, int index, Object[] deltas,
+			int[] loaded) {
+		Object delta = this.aggregator != null ? this.aggregator.init() : null;
+		String[] labelValues = new String[this.schema.size()];
+		for (Row<V> row : partition) {
+			for (int i = 0; i < labelValues.length; i++) {
+				labelValues[i] = row.getLabel(this.schema.getDimension(i));
+			}
+			int[] codes = this.schema.encode(labelValues);
+			V value = row.getValue();
+			if (this.aggregator != null) {
+				delta = this.aggregator.accumulate(delta, value);
+			}
+			this.accumulate(subtree, value);
+			this.descend(subtree, codes, 1, value, false);
+			deltas[index] = delta;
+			loaded[index] = loaded[index] + 1;
+		}
+	}
+
+	// the label values of a row in the aggregation order, verifying that the row
+	// can be inserted or deleted, as told by the participle of the operation
+	private String[] labelValues(Row<V> row, String operation) {
+		if (row.getValue() == null) {
+			throw new IllegalArgumentException("The " + operation + " row does not have a value: " + row);
+		}
+		if (!this.verifyInsert(row.getLabels())) {
+			throw new IllegalArgumentException(
+					"The " + operation + " row misses a value for an aggregation dimension: " + row);
+		}
+		String[] labelValues = new String[this.schema.size()];
+		for (int i = 0; i < labelValues.length; i++) {
+			labelValues[i] = row.getLabel(this.schema.getDimension(i));
+		}
+		return labelValues;
+	}
+
+	private String[] labelValues(PositionalRow<V> row, String operation) {
+		if (row.getValue() == null) {
+			throw new IllegalArgumentException("The " + operation + " row does not have a value: " + row);
+		}
+		String[] labelValues = row.getLabelValues();
+		if (labelValues.length != this.schema.size() || Arrays.asList(labelValues).contains(null)) {
+			throw new IllegalArgumentException(
+					"The " + operation + " row misses a value for an aggregation dimension: " + row);
+		}
+		return labelValues;
+	}
+
+	// a row being inserted must contain a value for all the labels in the ordering
+	private Boolean verifyInsert(Map<String, String> labels) {
 		Boolean verified = true;
 		Iterator<String> orderIter = this.labelsOrder.iterator();
 		while (orderIter.hasNext() && verified) {
-			if (!labels.contains(orderIter.next())) {
+			if (labels.get(orderIter.next()) == null) {
 				verified = false;
 			}
 		}
 		return verified;
 	}
 
+	// encoded values being inserted must have a known code for every dimension
+	private void verifyEncoded(int[] codes, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + Arrays.toString(codes));
+		}
+		if (codes.length != this.schema.size()) {
+			throw new IllegalArgumentException(
+					"The inserted row misses a value for an aggregation dimension: " + Arrays.toString(codes));
+		}
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i] < 0 || codes[i] >= this.schema.getDictionary(i).size()) {
+				throw new IllegalArgumentException("The inserted code is not in the dictionary of "
+						+ this.schema.getDimension(i) + ": " + codes[i]);
+			}
+		}
+	}
+
 	// a query must be a prefix of the ordering
 	private Boolean verifyGet(Set<String> query) throws TooManyLabelsInQueryException {
 		if (query.size() > this.labelsOrder.size()) {
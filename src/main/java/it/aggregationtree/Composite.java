@@ -1,65 +1,265 @@
 package it.aggregationtree;
 
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import it.aggregationtree.utils.IntMap;
 
 public class Composite<V> implements Node<V> {
 
-	private Set<Node<V>> childs;
+	// codes of the nodes created outside of an aggregation tree, below the codes
+	// assigned by the dictionaries and Dictionary.MISSING
+	private static final AtomicInteger UNENCODED = new AtomicInteger(Dictionary.MISSING);
+
+	// composite childs are indexed by the code of their label, while the values
+	// of the deepest level are kept in a single leaf bucket
+	private IntMap<Composite<V>> compositeChilds;
+	private Leaf<V> leaf;
 	private final String label;
-	private List<V> cachedValue;
-	private Boolean caching;
+	private final int code;
+	// partial state of the aggregator, if the tree uses one
+	private Object partial;
+	// snapshot epoch of the tree in which this node was created or copied
+	private long epoch;
 
-	public Composite(Set<Node<V>> childs, String label) {
+	public Composite(Set<Node<V>> childs, String label, int code) {
 		this.label = label;
-		this.childs = childs;
-		// by default caching is diabled
-		this.caching = false;
+		this.code = code;
+		this.setChilds(childs);
 	}
 
+	/**
+	 * Creates a node outside of an aggregation tree. The node is given a negative
+	 * code of its own, distinct from the code of any other node, so any number of
+	 * such nodes can be childs of the same node and they are retrieved by label
+	 * with getChild(String label).
+	 * 
+	 * @param childs: the childs of the node.
+	 * @param label: the label value of the node.
+	 */
+	public Composite(Set<Node<V>> childs, String label) {
+		this(childs, label, UNENCODED.decrementAndGet());
+	}
+
+	/**
+	 * Creates a node outside of an aggregation tree, as in Composite(Set<Node<V>>
+	 * childs, String label).
+	 * 
+	 * @param label: the label value of the node.
+	 */
 	public Composite(String label) {
+		this(label, UNENCODED.decrementAndGet());
+	}
+
+	/**
+	 * @param label: the label value of the node.
+	 * @param code: the code of the label value in the dictionary of its dimension.
+	 */
+	public Composite(String label, int code) {
 		this.label = label;
-		this.childs = new HashSet<Node<V>>();
-		// by default caching is set to false
-		this.caching = false;
+		this.code = code;
+		this.compositeChilds = new IntMap<Composite<V>>();
 	}
 
+	/**
+	 * Creates a shallow copy of a node: the copy has its own child map and leaf,
+	 * but it shares the child nodes, the values and the partial state with the
+	 * original node.
+	 * 
+	 * @param other: the node to be copied.
+	 */
+	public Composite(Composite<V> other) {
+		this.label = other.label;
+		this.code = other.code;
+		this.compositeChilds = new IntMap<Composite<V>>(other.compositeChilds);
+		this.leaf = other.leaf == null ? null : new Leaf<V>(other.leaf);
+		this.partial = other.partial;
+		this.epoch = other.epoch;
+	}
+
+	/**
+	 * Returns all the childs of this node. The returned set is a copy, thus
+	 * modifying it does not affect the node.
+	 * 
+	 * @return the set containing both composite and leaf childs.
+	 */
 	public Set<Node<V>> getChilds() {
+		Set<Node<V>> childs = new HashSet<Node<V>>(this.compositeChilds.values());
+		if (this.leaf != null) {
+			childs.add(this.leaf);
+		}
 		return childs;
 	}
 
 	public void setChilds(Set<Node<V>> childs) {
-		this.childs = childs;
+		this.compositeChilds = new IntMap<Composite<V>>();
+		this.leaf = null;
+		for (Node<V> c : childs) {
+			this.addChild(c);
+		}
+	}
+
+	public Collection<Composite<V>> getCompositeChilds() {
+		return this.compositeChilds.values();
+	}
+
+	/**
+	 * @return the bucket holding the values of this node, or null if no value has
+	 *         been added to this node.
+	 */
+	public Leaf<V> getLeaf() {
+		return this.leaf;
+	}
+
+	/**
+	 * Retrieves the composite child having the given label code.
+	 * 
+	 * @param code: the code of the label of the child to be retrieved.
+	 * 
+	 * @return the child with the given code, or null if there is no such child.
+	 */
+	public Composite<V> getChild(int code) {
+		return this.compositeChilds.get(code);
+	}
+
+	/**
+	 * Retrieves the composite child having the given label, scanning the childs
+	 * of this node.
+	 * 
+	 * @param label: the label of the child to be retrieved.
+	 * 
+	 * @return the child with the given label, or null if there is no such child.
+	 */
+	public Composite<V> getChild(String label) {
+		for (Composite<V> child : this.compositeChilds.values()) {
+			if (child.getLabel().equals(label)) {
+				return child;
+			}
+		}
+		return null;
 	}
 
 	public String getLabel() {
 		return this.label;
 	}
 
+	public int getCode() {
+		return this.code;
+	}
+
+	/**
+	 * Adds a child to this node. Adding a leaf appends its values to the bucket of
+	 * this node.
+	 * 
+	 * @param child: the child to be added.
+	 */
 	public void addChild(Node<V> child) {
-		this.childs.add(child);
+		if (child instanceof Composite) {
+			Composite<V> composite = (Composite<V>) child;
+			this.compositeChilds.put(composite.getCode(), composite);
+		} else if (this.leaf == null) {
+			this.leaf = (Leaf<V>) child;
+		} else {
+			child.forEachValue(this.leaf::add);
+		}
+	}
+
+	/**
+	 * Removes the composite child having the given label code.
+	 * 
+	 * @param code: the code of the label of the child to be removed.
+	 * 
+	 * @return the removed child, or null if there is no such child.
+	 */
+	public Composite<V> removeChild(int code) {
+		return this.compositeChilds.remove(code);
+	}
+
+	/**
+	 * Appends a value to the bucket of this node.
+	 * 
+	 * @param value: the value to be added.
+	 */
+	public void addValue(V value) {
+		if (this.leaf == null) {
+			this.leaf = new Leaf<V>();
+		}
+		this.leaf.add(value);
+	}
+
+	/**
+	 * Removes a value from the bucket of this node.
+	 * 
+	 * @param value: the value to be removed.
+	 * 
+	 * @return true if the value was in the bucket, false otherwise.
+	 */
+	public boolean removeValue(V value) {
+		return this.leaf != null && this.leaf.remove(value);
 	}
 
+	// the values are copied once into a list sized upfront
 	public List<V> getValue() {
-		if (this.caching) {
-			if (this.cachedValue == null) {
-				this.cachedValue = this.childs.parallelStream().map(n -> n.getValue()).reduce(new ArrayList<V>(), (a, b) -> {
-					ArrayList<V> c = new ArrayList<V>();
-					c.addAll(a);
-					c.addAll(b);
-					return c;
-				});
+		List<V> values = new ArrayList<V>(this.size());
+		this.forEachValue(values::add);
+		return values;
+	}
+
+	/**
+	 * Returns a view of the values stored below this node. The view is lazy:
+	 * iterating or streaming it walks the subtree without copying the values,
+	 * and it reflects the values inserted after its creation.
+	 * 
+	 * @return the collection of values stored below this node.
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator<V>(Composite.this);
 			}
-			return this.cachedValue;
-		} else {
-			return this.childs.parallelStream().map(n -> n.getValue()).reduce(new ArrayList<V>(), (a, b) -> {
-				ArrayList<V> c = new ArrayList<V>();
-				c.addAll(a);
-				c.addAll(b);
-				return c;
-			});
+
+			@Override
+			public int size() {
+				return Composite.this.size();
+			}
+
+			@Override
+			public void forEach(Consumer<? super V> action) {
+				Composite.this.forEachValue(action);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		int size = this.leaf == null ? 0 : this.leaf.size();
+		for (Composite<V> c : this.compositeChilds.values()) {
+			size = size + c.size();
+		}
+		return size;
+	}
+
+	@Override
+	public void forEachValue(Consumer<? super V> action) {
+		if (this.leaf != null) {
+			this.leaf.forEachValue(action);
+		}
+		for (Composite<V> c : this.compositeChilds.values()) {
+			c.forEachValue(action);
 		}
 	}
 
@@ -69,6 +269,18 @@ public class Composite<V> implements Node<V> {
 	}
 
 	public String printPretty(String indent, Boolean last) {
+		return this.printPretty(indent, last, Collections.<Comparator<Composite<V>>>emptyList(), 0);
+	}
+
+	/**
+	 * Builds a tree-like representation of this node, enumerating the childs of
+	 * each level in a given order.
+	 * 
+	 * @param orders: the order of the childs of each level below this node, null
+	 *        or missing for the levels whose childs are not ordered.
+	 * @param depth: the level of this node.
+	 */
+	String printPretty(String indent, Boolean last, List<Comparator<Composite<V>>> orders, int depth) {
 		StringBuilder sb = new StringBuilder();
 		sb.append(indent);
 
@@ -83,30 +295,78 @@ public class Composite<V> implements Node<V> {
 		sb.append(this.toString());
 		sb.append("\n");
 
+		Collection<Composite<V>> childs = this.compositeChilds.values();
+		if (depth < orders.size() && orders.get(depth) != null) {
+			List<Composite<V>> sorted = new ArrayList<Composite<V>>(childs);
+			sorted.sort(orders.get(depth));
+			childs = sorted;
+		}
 		int count = 0;
-		for (Node<V> c : this.childs) {
-			sb.append(c.printPretty(indent, count == this.childs.size() - 1));
+		int size = this.compositeChilds.size() + (this.leaf == null ? 0 : 1);
+		for (Composite<V> c : childs) {
+			sb.append(c.printPretty(indent, count == size - 1, orders, depth + 1));
 			count = count + 1;
 		}
+		if (this.leaf != null) {
+			sb.append(this.leaf.printPretty(indent, true));
+		}
 
 		return sb.toString();
 	}
 
-	public Boolean getCaching() {
-		return caching;
+	public Object getPartial() {
+		return partial;
+	}
+
+	public void setPartial(Object partial) {
+		this.partial = partial;
+	}
+
+	public long getEpoch() {
+		return epoch;
 	}
 
-	public void setCaching(Boolean caching) {
-		if (this.caching && !caching) {
-			// invalidate cache
-			this.cachedValue = null;
+	public void setEpoch(long epoch) {
+		this.epoch = epoch;
+	}
+
+	// depth-first iterator over the values below a node
+	private static class ValueIterator<V> implements Iterator<V> {
+
+		private final Deque<Iterator<Composite<V>>> composites;
+		private Leaf<V> leaf;
+		private Iterator<V> values;
+
+		public ValueIterator(Composite<V> node) {
+			this.composites = new ArrayDeque<Iterator<Composite<V>>>();
+			this.composites.push(node.compositeChilds.values().iterator());
+			this.leaf = node.leaf;
 		}
-		for (Node<V> c : this.childs) {
-			if (c instanceof Composite) {
-				((Composite<V>) c).setCaching(caching);
+
+		public boolean hasNext() {
+			while (this.values == null || !this.values.hasNext()) {
+				if (this.leaf != null) {
+					this.values = this.leaf.getValue().iterator();
+					this.leaf = null;
+				} else if (this.composites.isEmpty()) {
+					return false;
+				} else if (!this.composites.peek().hasNext()) {
+					this.composites.pop();
+				} else {
+					Composite<V> next = this.composites.peek().next();
+					this.leaf = next.leaf;
+					this.composites.push(next.compositeChilds.values().iterator());
+				}
+			}
+			return true;
+		}
+
+		public V next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
 			}
+			return this.values.next();
 		}
-		this.caching = caching;
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import it.aggregationtree.aggregators.Aggregator;
+
+/**
+ * Aggregation tree supporting simultaneous inserts and queries from any number
+ * of threads. Children are kept in concurrent maps, so that finding a node
+ * never locks, and the partial state of each node is striped, so that threads
+ * inserting through the same node rarely contend. Queries return the published
+ * aggregation of a node without locking unless new values were accumulated
+ * since the last query, in which case the stripes of that node only are merged.
+ *
+ * Only the partial states of the aggregator are kept, so a decomposable
+ * aggregator is required and the raw values are not stored.
+ */
+public class ConcurrentAggregationTree<V, R> {
+
+	// number of partial states a node can be split into by default
+	public static final int DEFAULT_STRIPES = Integer
+			.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+	private final ConcurrentNode<V, R> root;
+	private final LinkedHashSet<String> labelsOrder;
+	private final Schema schema;
+	private final Aggregator<V, Object, R> aggregator;
+	private final int stripes;
+
+	// constructors
+
+	public <A> ConcurrentAggregationTree(Aggregator<V, A, R> aggregator, int stripes,
+			LinkedHashSet<String> labelsOrder) {
+		if (stripes < 1 || Integer.bitCount(stripes) != 1) {
+			throw new IllegalArgumentException("The number of stripes must be a power of two.");
+		}
+		this.labelsOrder = labelsOrder;
+		this.aggregator = this.erase(aggregator);
+		this.stripes = stripes;
+		this.schema = new Schema(this.labelsOrder);
+		this.root = new ConcurrentNode<V, R>("All", Dictionary.MISSING, this.stripes);
+	}
+
+	public <A> ConcurrentAggregationTree(Aggregator<V, A, R> aggregator, LinkedHashSet<String> labelsOrder) {
+		this(aggregator, DEFAULT_STRIPES, labelsOrder);
+	}
+
+	public <A> ConcurrentAggregationTree(Aggregator<V, A, R> aggregator, String... labelsOrder) {
+		this(aggregator, DEFAULT_STRIPES, new LinkedHashSet<String>(Arrays.asList(labelsOrder)));
+	}
+
+	public <A> ConcurrentAggregationTree(List<Row<V>> data, Aggregator<V, A, R> aggregator, String... labelsOrder) {
+		this(aggregator, labelsOrder);
+		this.load(data);
+	}
+
+	// public methods
+
+	/**
+	 * Loads a dataset of rows into the aggregation tree.
+	 *
+	 * @param data: the list of rows to be loaded into the tree.
+	 */
+	public void load(List<Row<V>> data) {
+		for (Row<V> r : data) {
+			this.insert(r);
+		}
+	}
+
+	/**
+	 * Insert a row into the aggregation tree. This method can be called by many
+	 * threads at the same time, also while other threads query the tree.
+	 *
+	 * @param row: the row to be inserted.
+	 */
+	public void insert(Row<V> row) {
+		if (row.getValue() != null) {
+			if (this.verifyInsert(row.getLabels())) {
+				String[] labelValues = new String[this.schema.size()];
+				for (int i = 0; i < labelValues.length; i++) {
+					labelValues[i] = row.getLabel(this.schema.getDimension(i));
+				}
+				this.insertEncoded(this.schema.encode(labelValues), row.getValue());
+			} else {
+				throw new IllegalArgumentException(
+						"The inserted row misses a value for an aggregation dimension: " + row);
+			}
+		} else {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+		}
+	}
+
+	/**
+	 * Insert a positional row into the aggregation tree. The label values of the
+	 * row must follow the aggregation order, as defined by getSchema().
+	 *
+	 * @param row: the row to be inserted.
+	 */
+	public void insert(PositionalRow<V> row) {
+		if (row.getValue() != null) {
+			String[] labelValues = row.getLabelValues();
+			if (labelValues.length == this.schema.size() && !Arrays.asList(labelValues).contains(null)) {
+				this.insertEncoded(this.schema.encode(labelValues), row.getValue());
+			} else {
+				throw new IllegalArgumentException(
+						"The inserted row misses a value for an aggregation dimension: " + row);
+			}
+		} else {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+		}
+	}
+
+	/**
+	 * Insert a value into the aggregation tree given the codes of its label values.
+	 *
+	 * @param codes: the codes of the label values, one for each dimension of the
+	 *        aggregation order, as assigned by the dictionaries of getSchema().
+	 * @param value: the value to be inserted.
+	 */
+	public void insertEncoded(int[] codes, V value) {
+		this.verifyEncoded(codes, value);
+		ConcurrentNode<V, R> currentNode = this.root;
+		currentNode.accumulate(this.aggregator, value);
+		for (int i = 0; i < codes.length; i++) {
+			ConcurrentNode<V, R> child = currentNode.getChild(codes[i]);
+
+			if (child == null) {
+				child = currentNode.addChildIfAbsent(new ConcurrentNode<V, R>(
+						this.schema.getDictionary(i).decode(codes[i]), codes[i], this.stripes));
+			}
+			currentNode = child;
+			currentNode.accumulate(this.aggregator, value);
+		}
+	}
+
+	/**
+	 * Retrieves the aggregated value for a specified aggregation level. The
+	 * returned value includes every insert completed before the call.
+	 *
+	 * @param labelValues: A list of labels defining the aggregation level. The list
+	 *        of labels must be a prefix of the aggregation order specified when
+	 *        creating the tree.
+	 * @return the aggregated value.
+	 */
+	public R get(String... labelValues) {
+		return this.find(labelValues).aggregate(this.aggregator);
+	}
+
+	public Schema getSchema() {
+		return this.schema;
+	}
+
+	/**
+	 * Builds a tree-like representation of the tree to be printed for
+	 * visualization purpose.
+	 *
+	 * @return the string containing the tree-like representation of the tree.
+	 */
+	public String printTree() {
+		return this.root.printPretty("", true);
+	}
+
+	// private methods
+
+	@SuppressWarnings("unchecked")
+	private <A> Aggregator<V, Object, R> erase(Aggregator<V, A, R> aggregator) {
+		return (Aggregator<V, Object, R>) aggregator;
+	}
+
+	private ConcurrentNode<V, R> find(String... labelValues) {
+		if (labelValues.length > this.schema.size()) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		} else {
+			ConcurrentNode<V, R> currentNode = this.root;
+			for (int i = 0; i < labelValues.length; i++) {
+				int code = this.schema.getDictionary(i).lookup(labelValues[i]);
+				ConcurrentNode<V, R> child = code == Dictionary.MISSING ? null : currentNode.getChild(code);
+				if (child == null) {
+					throw new IllegalArgumentException(
+							"The provided query specifies a missing label value: " + labelValues[i]);
+				}
+				currentNode = child;
+			}
+			return currentNode;
+		}
+	}
+
+	// a row being inserted must contain a value for all the labels in the ordering
+	private Boolean verifyInsert(Map<String, String> labels) {
+		Boolean verified = true;
+		Iterator<String> orderIter = this.labelsOrder.iterator();
+		while (orderIter.hasNext() && verified) {
+			if (labels.get(orderIter.next()) == null) {
+				verified = false;
+			}
+		}
+		return verified;
+	}
+
+	// encoded values being inserted must have a known code for every dimension
+	private void verifyEncoded(int[] codes, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + Arrays.toString(codes));
+		}
+		if (codes.length != this.schema.size()) {
+			throw new IllegalArgumentException(
+					"The inserted row misses a value for an aggregation dimension: " + Arrays.toString(codes));
+		}
+		for (int i = 0; i < codes.length; i++) {
+			if (codes[i] < 0 || codes[i] >= this.schema.getDictionary(i).size()) {
+				throw new IllegalArgumentException("The inserted code is not in the dictionary of "
+						+ this.schema.getDimension(i) + ": " + codes[i]);
+			}
+		}
+	}
+
+}
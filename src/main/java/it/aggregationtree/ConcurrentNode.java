@@ -0,0 +1,138 @@
+package it.aggregationtree;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import it.aggregationtree.aggregators.Aggregator;
+
+/**
+ * Node of a concurrent aggregation tree. The partial state of a node is split
+ * into stripes, so that threads inserting through the same node usually update
+ * different stripes and only contend on the same stripe lock when they collide.
+ * The stripes are created lazily, so nodes updated by few threads keep few
+ * partial states. The aggregated value is published through a volatile field
+ * and is recomputed by a reader only after a new value has been accumulated.
+ */
+class ConcurrentNode<V, R> {
+
+	private final ConcurrentHashMap<Integer, ConcurrentNode<V, R>> childs;
+	private final String label;
+	private final int code;
+	private final AtomicReferenceArray<Stripe> stripes;
+	private volatile boolean dirty;
+	private volatile R published;
+
+	// stripes hold a partial state and serve as the lock guarding it
+	private static final class Stripe {
+		private Object partial;
+
+		private Stripe(Object partial) {
+			this.partial = partial;
+		}
+	}
+
+	public ConcurrentNode(String label, int code, int stripes) {
+		this.childs = new ConcurrentHashMap<Integer, ConcurrentNode<V, R>>();
+		this.label = label;
+		this.code = code;
+		this.stripes = new AtomicReferenceArray<Stripe>(stripes);
+		this.dirty = false;
+		this.published = null;
+	}
+
+	public String getLabel() {
+		return this.label;
+	}
+
+	public int getCode() {
+		return this.code;
+	}
+
+	public ConcurrentNode<V, R> getChild(int code) {
+		return this.childs.get(code);
+	}
+
+	/**
+	 * Returns the child with the specified code, atomically adding the given node
+	 * when no such child exists yet.
+	 *
+	 * @param child: the node to be added when the child is missing.
+	 * @return the child with the code of the given node.
+	 */
+	public ConcurrentNode<V, R> addChildIfAbsent(ConcurrentNode<V, R> child) {
+		ConcurrentNode<V, R> previous = this.childs.putIfAbsent(child.getCode(), child);
+		return previous == null ? child : previous;
+	}
+
+	public Collection<ConcurrentNode<V, R>> getChilds() {
+		return this.childs.values();
+	}
+
+	public void accumulate(Aggregator<V, Object, R> aggregator, V value) {
+		int index = (int) Thread.currentThread().getId() & (this.stripes.length() - 1);
+		Stripe stripe = this.stripes.get(index);
+		if (stripe == null) {
+			this.stripes.compareAndSet(index, null, new Stripe(aggregator.init()));
+			stripe = this.stripes.get(index);
+		}
+		synchronized (stripe) {
+			stripe.partial = aggregator.accumulate(stripe.partial, value);
+		}
+		// marked after the update, so a reader missing the value will recompute
+		this.dirty = true;
+	}
+
+	public R aggregate(Aggregator<V, Object, R> aggregator) {
+		R result = this.published;
+		if (result != null && !this.dirty) {
+			return result;
+		}
+		synchronized (this) {
+			if (this.published == null || this.dirty) {
+				this.dirty = false;
+				this.published = aggregator.finish(this.merge(aggregator));
+			}
+			return this.published;
+		}
+	}
+
+	private Object merge(Aggregator<V, Object, R> aggregator) {
+		Object partial = aggregator.init();
+		for (int i = 0; i < this.stripes.length(); i++) {
+			Stripe stripe = this.stripes.get(i);
+			if (stripe != null) {
+				synchronized (stripe) {
+					partial = aggregator.merge(partial, stripe.partial);
+				}
+			}
+		}
+		return partial;
+	}
+
+	public String printPretty(String indent, Boolean last) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(indent);
+
+		if (last) {
+			sb.append("\\-");
+			indent += "  ";
+		} else {
+			sb.append("|-");
+			indent += "| ";
+		}
+
+		sb.append(this.label);
+		sb.append("\n");
+
+		int count = 0;
+		int size = this.childs.size();
+		for (ConcurrentNode<V, R> c : this.childs.values()) {
+			sb.append(c.printPretty(indent, count == size - 1));
+			count = count + 1;
+		}
+
+		return sb.toString();
+	}
+
+}
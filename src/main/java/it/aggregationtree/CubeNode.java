@@ -0,0 +1,66 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import it.aggregationtree.utils.IntMap;
+
+/**
+ * Node of an ordering of an aggregation cube. Instead of values, the deepest
+ * nodes hold the ids of their rows in the row store of the cube. The nodes of
+ * materialized orderings also keep the partial state of the aggregator.
+ */
+class CubeNode {
+
+	private final IntMap<CubeNode> childs;
+	private int[] rows;
+	private int size;
+	private Object partial;
+
+	CubeNode() {
+		this.childs = new IntMap<CubeNode>();
+		this.rows = null;
+		this.size = 0;
+	}
+
+	CubeNode getChild(int code) {
+		return this.childs.get(code);
+	}
+
+	void addChild(int code, CubeNode child) {
+		this.childs.put(code, child);
+	}
+
+	void addRow(int row) {
+		if (this.rows == null) {
+			this.rows = new int[4];
+		} else if (this.size == this.rows.length) {
+			this.rows = Arrays.copyOf(this.rows, this.size * 2);
+		}
+		this.rows[this.size] = row;
+		this.size = this.size + 1;
+	}
+
+	/**
+	 * Visits the ids of the rows stored below this node.
+	 *
+	 * @param action: the action performed on every row id.
+	 */
+	void forEachRow(IntConsumer action) {
+		for (int i = 0; i < this.size; i++) {
+			action.accept(this.rows[i]);
+		}
+		for (CubeNode c : this.childs.values()) {
+			c.forEachRow(action);
+		}
+	}
+
+	Object getPartial() {
+		return this.partial;
+	}
+
+	void setPartial(Object partial) {
+		this.partial = partial;
+	}
+
+}
@@ -0,0 +1,195 @@
+package it.aggregationtree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the values of a dimension to dense int codes. Codes are assigned in
+ * order of first appearance, starting from 0, and every value is stored only
+ * once.
+ * 
+ * Dictionaries can be shared by threads: known values are encoded and decoded
+ * without locking, while assigning a new code is serialised.
+ */
+public class Dictionary {
+
+	public static final int MISSING = -1;
+
+	private final ConcurrentHashMap<String, Integer> codes;
+	// values are written before their code is published in codes
+	private volatile String[] values;
+	private int size;
+	// index of the UTF-8 encoded values, built on the first lookup by bytes
+	private List<byte[]> bytes;
+	private int[] byteSlots;
+
+	public Dictionary() {
+		this.codes = new ConcurrentHashMap<String, Integer>();
+		this.values = new String[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Retrieves the code of a value, assigning a new code if the value is not in
+	 * the dictionary yet.
+	 * 
+	 * @param value: the value to be encoded.
+	 * 
+	 * @return the code of the value.
+	 */
+	public int encode(String value) {
+		Integer code = this.codes.get(value);
+		return code == null ? this.add(value) : code;
+	}
+
+	/**
+	 * Retrieves the code of a UTF-8 encoded value, assigning a new code if the
+	 * value is not in the dictionary yet. A String is created only for new
+	 * values.
+	 * 
+	 * @param buffer: the buffer containing the encoded value.
+	 * @param offset: the absolute position of the value in the buffer.
+	 * @param length: the length of the value in bytes.
+	 * 
+	 * @return the code of the value.
+	 */
+	public synchronized int encode(ByteBuffer buffer, int offset, int length) {
+		int code = this.lookup(buffer, offset, length);
+		if (code == MISSING) {
+			byte[] value = new byte[length];
+			for (int i = 0; i < length; i++) {
+				value[i] = buffer.get(offset + i);
+			}
+			code = this.encode(new String(value, StandardCharsets.UTF_8));
+		}
+		return code;
+	}
+
+	/**
+	 * Retrieves the code of a value without modifying the dictionary.
+	 * 
+	 * @param value: the value to be looked up.
+	 * 
+	 * @return the code of the value, or MISSING if the value is not in the
+	 *         dictionary.
+	 */
+	public int lookup(String value) {
+		Integer code = value == null ? null : this.codes.get(value);
+		return code == null ? MISSING : code;
+	}
+
+	/**
+	 * Retrieves the code of a UTF-8 encoded value without modifying the
+	 * dictionary and without decoding the value.
+	 * 
+	 * @param buffer: the buffer containing the encoded value.
+	 * @param offset: the absolute position of the value in the buffer.
+	 * @param length: the length of the value in bytes.
+	 * 
+	 * @return the code of the value, or MISSING if the value is not in the
+	 *         dictionary.
+	 */
+	public synchronized int lookup(ByteBuffer buffer, int offset, int length) {
+		if (this.bytes == null) {
+			this.bytes = new ArrayList<byte[]>();
+			this.byteSlots = new int[16];
+			for (int code = 0; code < this.size; code++) {
+				this.indexBytes(code);
+			}
+		}
+		int mask = this.byteSlots.length - 1;
+		for (int i = hash(buffer, offset, length) & mask; this.byteSlots[i] != 0; i = (i + 1) & mask) {
+			int code = this.byteSlots[i] - 1;
+			if (equals(this.bytes.get(code), buffer, offset, length)) {
+				return code;
+			}
+		}
+		return MISSING;
+	}
+
+	/**
+	 * @param code: a code assigned by this dictionary.
+	 * 
+	 * @return the value having the given code.
+	 */
+	public String decode(int code) {
+		return this.values[code];
+	}
+
+	/**
+	 * @return the number of distinct values in the dictionary.
+	 */
+	public int size() {
+		return this.codes.size();
+	}
+
+	// private methods
+
+	private synchronized int add(String value) {
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.size;
+			if (code == this.values.length) {
+				this.values = Arrays.copyOf(this.values, code * 2);
+			}
+			this.values[code] = value;
+			this.size = this.size + 1;
+			if (this.bytes != null) {
+				this.indexBytes(code);
+			}
+			this.codes.put(value, code);
+		}
+		return code;
+	}
+
+	private void indexBytes(int code) {
+		byte[] value = this.values[code].getBytes(StandardCharsets.UTF_8);
+		this.bytes.add(value);
+		// slots hold code + 1, so that 0 marks an empty slot, and are kept at most
+		// half full
+		if (this.bytes.size() * 2 > this.byteSlots.length) {
+			this.byteSlots = new int[this.byteSlots.length * 2];
+			for (int c = 0; c < this.bytes.size(); c++) {
+				this.slot(c);
+			}
+		} else {
+			this.slot(code);
+		}
+	}
+
+	private void slot(int code) {
+		byte[] value = this.bytes.get(code);
+		int mask = this.byteSlots.length - 1;
+		int i = hash(ByteBuffer.wrap(value), 0, value.length) & mask;
+		while (this.byteSlots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		this.byteSlots[i] = code + 1;
+	}
+
+	// FNV-1a hash of a sequence of bytes
+	private static int hash(ByteBuffer buffer, int offset, int length) {
+		int h = 0x811C9DC5;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ buffer.get(offset + i)) * 0x01000193;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean equals(byte[] value, ByteBuffer buffer, int offset, int length) {
+		if (value.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (value[i] != buffer.get(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,126 @@
+package it.aggregationtree;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * An aggregation tree specialised for double values. Values are kept in primitive
+ * buffers at the deepest level of the tree, and every node maintains the
+ * reduction of the values below it, so that neither storing nor aggregating the
+ * values requires boxing.
+ */
+public class DoubleAggregationTree extends PrimitiveAggregationTree<DoubleNode> {
+
+	private final DoubleBinaryOperator reducer;
+	private final double identity;
+
+	// constructors
+
+	/**
+	 * @param reducer: an associative function reducing two values into one.
+	 * @param identity: the identity value of the reducer, which is the aggregated
+	 *        value of an empty set of values.
+	 * @param labelsOrder: the aggregation order.
+	 */
+	public DoubleAggregationTree(DoubleBinaryOperator reducer, double identity, LinkedHashSet<String> labelsOrder) {
+		super(labelsOrder, new DoubleNode("All", identity));
+		this.reducer = reducer;
+		this.identity = identity;
+	}
+
+	public DoubleAggregationTree(DoubleBinaryOperator reducer, double identity, String... labelsOrder) {
+		this(reducer, identity, toOrder(labelsOrder));
+	}
+
+	public DoubleAggregationTree(List<? extends Row<? extends Number>> data, DoubleBinaryOperator reducer, double identity,
+			String... labelsOrder) {
+		this(reducer, identity, labelsOrder);
+		this.load(data);
+	}
+
+	/**
+	 * Creates a tree summing its values.
+	 */
+	public static DoubleAggregationTree sum(String... labelsOrder) {
+		return new DoubleAggregationTree((a, b) -> a + b, 0.0, labelsOrder);
+	}
+
+	/**
+	 * Creates a tree computing the minimum of its values.
+	 */
+	public static DoubleAggregationTree min(String... labelsOrder) {
+		return new DoubleAggregationTree(Math::min, Double.POSITIVE_INFINITY, labelsOrder);
+	}
+
+	/**
+	 * Creates a tree computing the maximum of its values.
+	 */
+	public static DoubleAggregationTree max(String... labelsOrder) {
+		return new DoubleAggregationTree(Math::max, Double.NEGATIVE_INFINITY, labelsOrder);
+	}
+
+	// public methods
+
+	/**
+	 * Insert a value into the aggregation tree.
+	 * 
+	 * @param value: the value to be inserted.
+	 * @param labelValues: the label values of the value, one for each dimension of
+	 *        the aggregation order.
+	 */
+	public void insert(double value, String... labelValues) {
+		this.verifyInsert(labelValues);
+		DoubleNode currentNode = this.root;
+		currentNode.accumulate(value, this.reducer);
+		for (String labelValue : labelValues) {
+			currentNode = this.getOrCreateChild(currentNode, labelValue);
+			currentNode.accumulate(value, this.reducer);
+		}
+		currentNode.addValue(value);
+	}
+
+	/**
+	 * Retrieves the aggregated value for a specified aggregation level.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level, which
+	 *        must be a prefix of the aggregation order. When called without
+	 *        specifying any label, it retrieves the aggregated value for the entire
+	 *        stored dataset.
+	 * 
+	 * @return the aggregated value for the specified aggregation level.
+	 */
+	public double get(String... labelValues) {
+		return this.find(labelValues).getPartial();
+	}
+
+	/**
+	 * Reduces the values at a specified aggregation level with a reducer other
+	 * than the one maintained by the tree. The values are scanned from their
+	 * primitive buffers.
+	 * 
+	 * @param reducer: an associative function reducing two values into one.
+	 * @param identity: the identity value of the reducer.
+	 * @param labelValues: A list of labels defining the aggregation level.
+	 * 
+	 * @return the reduced value.
+	 */
+	public double reduce(DoubleBinaryOperator reducer, double identity, String... labelValues) {
+		double[] result = { identity };
+		this.find(labelValues).forEachValue((v) -> result[0] = reducer.applyAsDouble(result[0], v));
+		return result[0];
+	}
+
+	// private methods
+
+	@Override
+	protected DoubleNode newNode(String label) {
+		return new DoubleNode(label, this.identity);
+	}
+
+	@Override
+	protected void insertValue(Number value, String[] labelValues) {
+		this.insert(value.doubleValue(), labelValues);
+	}
+
+}
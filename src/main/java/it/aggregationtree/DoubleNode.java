@@ -0,0 +1,63 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Node of a DoubleAggregationTree.
+ */
+class DoubleNode extends PrimitiveNode<DoubleNode> {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	// values are stored only by the nodes at the deepest level
+	private double[] values;
+	private int size;
+	private double partial;
+
+	public DoubleNode(String label, double identity) {
+		super(label);
+		this.partial = identity;
+		this.size = 0;
+	}
+
+	public double getPartial() {
+		return this.partial;
+	}
+
+	/**
+	 * Updates the partial aggregation of this node with a new value.
+	 */
+	public void accumulate(double value, DoubleBinaryOperator reducer) {
+		this.partial = reducer.applyAsDouble(this.partial, value);
+		this.count(value);
+	}
+
+	/**
+	 * Appends a value to the buffer of this node.
+	 */
+	public void addValue(double value) {
+		if (this.values == null) {
+			this.values = new double[INITIAL_CAPACITY];
+		} else if (this.size == this.values.length) {
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+		this.values[this.size] = value;
+		this.size = this.size + 1;
+	}
+
+	public void forEachValue(DoubleConsumer action) {
+		for (int i = 0; i < this.size; i++) {
+			action.accept(this.values[i]);
+		}
+		for (DoubleNode c : this.getChilds()) {
+			c.forEachValue(action);
+		}
+	}
+
+	@Override
+	protected String printValues() {
+		return Arrays.toString(Arrays.copyOf(this.values, this.size));
+	}
+}
@@ -0,0 +1,124 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Order of the label values of a dimension. The values of the dictionary of
+ * the dimension are kept sorted, so that the codes of the values within a range
+ * or starting with a prefix are found without going through the whole
+ * dictionary. The index catches up with the values added to the dictionary
+ * since its last use, thus it is not affected by the way rows are inserted.
+ *
+ * The comparator is expected to be consistent with equals.
+ */
+class LabelOrder {
+
+	private final Dictionary dictionary;
+	private final Comparator<? super String> comparator;
+	// whether the values starting with a same prefix are contiguous in the order
+	private final boolean prefixOrdered;
+	private final TreeMap<String, Integer> codes;
+	// number of codes of the dictionary already in the index
+	private int indexed;
+
+	LabelOrder(Dictionary dictionary, Comparator<? super String> comparator, boolean prefixOrdered) {
+		this.dictionary = dictionary;
+		this.comparator = comparator;
+		this.prefixOrdered = prefixOrdered;
+		this.codes = new TreeMap<String, Integer>(comparator);
+		this.indexed = 0;
+	}
+
+	Comparator<? super String> getComparator() {
+		return this.comparator;
+	}
+
+	/**
+	 * Finds the codes of the values within a range, unless there are more than a
+	 * given number of them, in which case it is cheaper for the caller to filter
+	 * the values it holds.
+	 *
+	 * @param from: the lowest value of the range, inclusive, or null if the range
+	 *        has no lower bound.
+	 * @param to: the highest value of the range, inclusive, or null if the range
+	 *        has no upper bound.
+	 * @param limit: the maximum number of codes to be returned.
+	 *
+	 * @return the codes of the values within the range, in order, or null if
+	 *         there are more than limit of them. A range whose lowest value is
+	 *         above its highest one is empty.
+	 */
+	synchronized int[] range(String from, String to, int limit) {
+		if (from != null && to != null && this.comparator.compare(from, to) > 0) {
+			return new int[0];
+		}
+		this.sync();
+		NavigableMap<String, Integer> range = this.codes;
+		if (from != null) {
+			range = range.tailMap(from, true);
+		}
+		if (to != null) {
+			range = range.headMap(to, true);
+		}
+		return this.collect(range, null, limit);
+	}
+
+	/**
+	 * Finds the codes of the values starting with a prefix, as in range(String
+	 * from, String to, int limit). The values starting with a prefix are only
+	 * contiguous in orders like the natural one, so null is returned for an
+	 * order not declared as such.
+	 */
+	synchronized int[] prefixed(String prefix, int limit) {
+		if (!this.prefixOrdered) {
+			return null;
+		}
+		this.sync();
+		return this.collect(this.codes.tailMap(prefix, true), prefix, limit);
+	}
+
+	/**
+	 * @return whether a value is within a range, as in range(String from, String
+	 *         to, int limit).
+	 */
+	boolean contains(String from, String to, String value) {
+		return (from == null || this.comparator.compare(value, from) >= 0)
+				&& (to == null || this.comparator.compare(value, to) <= 0);
+	}
+
+	// private methods
+
+	private void sync() {
+		int size = this.dictionary.size();
+		for (int code = this.indexed; code < size; code++) {
+			this.codes.put(this.dictionary.decode(code), code);
+		}
+		this.indexed = size;
+	}
+
+	// the codes of the values of a sorted view, stopping at the first value not
+	// starting with the prefix, if any
+	private int[] collect(NavigableMap<String, Integer> values, String prefix, int limit) {
+		int[] codes = new int[Math.min(limit, 16)];
+		int size = 0;
+		for (Map.Entry<String, Integer> entry : values.entrySet()) {
+			if (prefix != null && !entry.getKey().startsWith(prefix)) {
+				break;
+			}
+			if (size == limit) {
+				return null;
+			}
+			if (size == codes.length) {
+				codes = Arrays.copyOf(codes, Math.min(limit, size * 2));
+			}
+			codes[size] = entry.getValue();
+			size = size + 1;
+		}
+		return Arrays.copyOf(codes, size);
+	}
+
+}
@@ -1,24 +1,137 @@
 package it.aggregationtree;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+/**
+ * The bucket holding the values of a group at the deepest level of the tree.
+ * Values are appended to a contiguous growable array, so that they can be
+ * scanned sequentially.
+ */
 public class Leaf<V> implements Node<V> {
 
-	private List<V> value;
+	private static final int INITIAL_CAPACITY = 4;
+
+	private Object[] values;
+	private int size;
+	// whether the array of values is shared with another leaf
+	private boolean shared;
+	// supplies the values of a leaf restored from a file until they are read
+	private volatile Supplier<Object[]> loader;
+
+	public Leaf() {
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
 
 	public Leaf(V value) {
-		this.value = new ArrayList<V>();
-		this.value.add(value);
+		this();
+		this.add(value);
+	}
+
+	/**
+	 * Creates a leaf holding the values of another leaf without copying them. The
+	 * two leaves share the array of values: appending to either of them writes
+	 * past the size of the other one, so each leaf keeps seeing its own values as
+	 * long as only one of them is appended to. The new leaf copies the array
+	 * before removing a value from it.
+	 * 
+	 * @param other: the leaf whose values are shared.
+	 */
+	public Leaf(Leaf<V> other) {
+		this.values = other.values();
+		this.size = other.size;
+		this.shared = true;
+	}
+
+	/**
+	 * Creates a leaf whose values are loaded on first access. The size of the
+	 * leaf is known upfront, so it can be counted without loading the values.
+	 * 
+	 * @param size: the number of values of the leaf.
+	 * @param loader: supplies an array holding exactly the values of the leaf.
+	 */
+	public Leaf(int size, Supplier<Object[]> loader) {
+		this.size = size;
+		this.loader = loader;
+	}
+
+	/**
+	 * Appends a value to the bucket, growing it if needed.
+	 * 
+	 * @param value: the value to be added.
+	 */
+	public void add(V value) {
+		this.values();
+		if (this.size == this.values.length) {
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+		this.values[this.size] = value;
+		this.size = this.size + 1;
+	}
+
+	/**
+	 * Removes the first occurrence of a value from the bucket, keeping the order
+	 * of the other values.
+	 * 
+	 * @param value: the value to be removed.
+	 * 
+	 * @return true if the value was in the bucket, false otherwise.
+	 */
+	public boolean remove(V value) {
+		Object[] values = this.values();
+		for (int i = 0; i < this.size; i++) {
+			if (Objects.equals(values[i], value)) {
+				if (this.shared) {
+					this.values = Arrays.copyOf(values, values.length);
+					this.shared = false;
+				}
+				System.arraycopy(this.values, i + 1, this.values, i, this.size - i - 1);
+				this.size = this.size - 1;
+				this.values[this.size] = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int index) {
+		if (index >= this.size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+		}
+		return (V) this.values()[index];
 	}
 
+	/**
+	 * @return an unmodifiable view of the values in the bucket.
+	 */
 	public List<V> getValue() {
-		return this.value;
+		return new ValueList();
+	}
+
+	@Override
+	public int size() {
+		return this.size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void forEachValue(Consumer<? super V> action) {
+		Object[] values = this.values();
+		for (int i = 0; i < this.size; i++) {
+			action.accept((V) values[i]);
+		}
 	}
 
 	@Override
 	public String toString() {
-		return this.value.toString();
+		return this.getValue().toString();
 	}
 
 	public String printPretty(String indent, Boolean last) {
@@ -40,4 +153,31 @@ public class Leaf<V> implements Node<V> {
 
 	}
 
+	private Object[] values() {
+		if (this.loader != null) {
+			synchronized (this) {
+				if (this.loader != null) {
+					Object[] values = this.loader.get();
+					// an empty leaf still needs room to grow
+					this.values = values.length == 0 ? new Object[INITIAL_CAPACITY] : values;
+					this.loader = null;
+				}
+			}
+		}
+		return this.values;
+	}
+
+	private class ValueList extends AbstractList<V> implements RandomAccess {
+
+		@Override
+		public V get(int index) {
+			return Leaf.this.get(index);
+		}
+
+		@Override
+		public int size() {
+			return Leaf.this.size;
+		}
+	}
+
 }
\ No newline at end of file
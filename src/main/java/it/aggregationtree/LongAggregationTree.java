@@ -0,0 +1,134 @@
+package it.aggregationtree;
+
+import java.math.BigInteger;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * An aggregation tree specialised for long values. Values are kept in primitive
+ * buffers at the deepest level of the tree, and every node maintains the
+ * reduction of the values below it, so that neither storing nor aggregating the
+ * values requires boxing.
+ */
+public class LongAggregationTree extends PrimitiveAggregationTree<LongNode> {
+
+	private final LongBinaryOperator reducer;
+	private final long identity;
+
+	// constructors
+
+	/**
+	 * @param reducer: an associative function reducing two values into one.
+	 * @param identity: the identity value of the reducer, which is the aggregated
+	 *        value of an empty set of values.
+	 * @param labelsOrder: the aggregation order.
+	 */
+	public LongAggregationTree(LongBinaryOperator reducer, long identity, LinkedHashSet<String> labelsOrder) {
+		super(labelsOrder, new LongNode("All", identity));
+		this.reducer = reducer;
+		this.identity = identity;
+	}
+
+	public LongAggregationTree(LongBinaryOperator reducer, long identity, String... labelsOrder) {
+		this(reducer, identity, toOrder(labelsOrder));
+	}
+
+	public LongAggregationTree(List<? extends Row<? extends Number>> data, LongBinaryOperator reducer, long identity,
+			String... labelsOrder) {
+		this(reducer, identity, labelsOrder);
+		this.load(data);
+	}
+
+	/**
+	 * Creates a tree summing its values.
+	 */
+	public static LongAggregationTree sum(String... labelsOrder) {
+		return new LongAggregationTree((a, b) -> a + b, 0L, labelsOrder);
+	}
+
+	/**
+	 * Creates a tree computing the minimum of its values.
+	 */
+	public static LongAggregationTree min(String... labelsOrder) {
+		return new LongAggregationTree(Math::min, Long.MAX_VALUE, labelsOrder);
+	}
+
+	/**
+	 * Creates a tree computing the maximum of its values.
+	 */
+	public static LongAggregationTree max(String... labelsOrder) {
+		return new LongAggregationTree(Math::max, Long.MIN_VALUE, labelsOrder);
+	}
+
+	// public methods
+
+	/**
+	 * Insert a value into the aggregation tree.
+	 * 
+	 * @param value: the value to be inserted.
+	 * @param labelValues: the label values of the value, one for each dimension of
+	 *        the aggregation order.
+	 */
+	public void insert(long value, String... labelValues) {
+		this.verifyInsert(labelValues);
+		LongNode currentNode = this.root;
+		currentNode.accumulate(value, this.reducer);
+		for (String labelValue : labelValues) {
+			currentNode = this.getOrCreateChild(currentNode, labelValue);
+			currentNode.accumulate(value, this.reducer);
+		}
+		currentNode.addValue(value);
+	}
+
+	/**
+	 * Retrieves the aggregated value for a specified aggregation level.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level, which
+	 *        must be a prefix of the aggregation order. When called without
+	 *        specifying any label, it retrieves the aggregated value for the entire
+	 *        stored dataset.
+	 * 
+	 * @return the aggregated value for the specified aggregation level.
+	 */
+	public long get(String... labelValues) {
+		return this.find(labelValues).getPartial();
+	}
+
+	/**
+	 * Reduces the values at a specified aggregation level with a reducer other
+	 * than the one maintained by the tree. The values are scanned from their
+	 * primitive buffers.
+	 * 
+	 * @param reducer: an associative function reducing two values into one.
+	 * @param identity: the identity value of the reducer.
+	 * @param labelValues: A list of labels defining the aggregation level.
+	 * 
+	 * @return the reduced value.
+	 */
+	public long reduce(LongBinaryOperator reducer, long identity, String... labelValues) {
+		long[] result = { identity };
+		this.find(labelValues).forEachValue((v) -> result[0] = reducer.applyAsLong(result[0], v));
+		return result[0];
+	}
+
+	// private methods
+
+	@Override
+	protected LongNode newNode(String label) {
+		return new LongNode(label, this.identity);
+	}
+
+	// only integral values are accepted, so that no value is silently truncated
+	@Override
+	protected void insertValue(Number value, String[] labelValues) {
+		if (value instanceof BigInteger && ((BigInteger) value).bitLength() > 63) {
+			throw new IllegalArgumentException("Value out of the range of a long: " + value);
+		} else if (!(value instanceof Long || value instanceof Integer || value instanceof Short
+				|| value instanceof Byte || value instanceof BigInteger)) {
+			throw new IllegalArgumentException("The inserted value is not an integer: " + value);
+		}
+		this.insert(value.longValue(), labelValues);
+	}
+
+}
@@ -0,0 +1,63 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+
+/**
+ * Node of a LongAggregationTree.
+ */
+class LongNode extends PrimitiveNode<LongNode> {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	// values are stored only by the nodes at the deepest level
+	private long[] values;
+	private int size;
+	private long partial;
+
+	public LongNode(String label, long identity) {
+		super(label);
+		this.partial = identity;
+		this.size = 0;
+	}
+
+	public long getPartial() {
+		return this.partial;
+	}
+
+	/**
+	 * Updates the partial aggregation of this node with a new value.
+	 */
+	public void accumulate(long value, LongBinaryOperator reducer) {
+		this.partial = reducer.applyAsLong(this.partial, value);
+		this.count(value);
+	}
+
+	/**
+	 * Appends a value to the buffer of this node.
+	 */
+	public void addValue(long value) {
+		if (this.values == null) {
+			this.values = new long[INITIAL_CAPACITY];
+		} else if (this.size == this.values.length) {
+			this.values = Arrays.copyOf(this.values, this.size * 2);
+		}
+		this.values[this.size] = value;
+		this.size = this.size + 1;
+	}
+
+	public void forEachValue(LongConsumer action) {
+		for (int i = 0; i < this.size; i++) {
+			action.accept(this.values[i]);
+		}
+		for (LongNode c : this.getChilds()) {
+			c.forEachValue(action);
+		}
+	}
+
+	@Override
+	protected String printValues() {
+		return Arrays.toString(Arrays.copyOf(this.values, this.size));
+	}
+}
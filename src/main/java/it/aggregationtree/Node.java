@@ -1,9 +1,27 @@
 package it.aggregationtree;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface Node<V> {
 	public List<V> getValue();
 
 	public String printPretty(String indent, Boolean last);
-}
+
+	/**
+	 * @return the number of values stored below this node.
+	 */
+	public default int size() {
+		return this.getValue().size();
+	}
+
+	/**
+	 * Performs the given action on each value stored below this node, without
+	 * materializing them into an intermediate collection.
+	 * 
+	 * @param action: the action to be performed on each value.
+	 */
+	public default void forEachValue(Consumer<? super V> action) {
+		this.getValue().forEach(action);
+	}
+}
\ No newline at end of file
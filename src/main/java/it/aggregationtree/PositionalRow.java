@@ -0,0 +1,56 @@
+package it.aggregationtree;
+
+/**
+ * A row whose label values are given by position, following the dimensions of a
+ * Schema, so that no map has to be built for each row.
+ */
+public class PositionalRow<V> {
+
+	// properties
+
+	private String[] labelValues;
+
+	private V value;
+
+	// constructor
+
+	public PositionalRow(String[] labelValues, V value) {
+		this.labelValues = labelValues;
+		this.value = value;
+	}
+
+	// getters and setters
+
+	public V getValue() {
+		return value;
+	}
+
+	public void setValue(V value) {
+		this.value = value;
+	}
+
+	public String[] getLabelValues() {
+		return labelValues;
+	}
+
+	public void setLabelValues(String[] labelValues) {
+		this.labelValues = labelValues;
+	}
+
+	public String getLabel(int position) {
+		return this.labelValues[position];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		for (String l : this.labelValues) {
+			sb.append(l + ",");
+		}
+		sb.append(this.value);
+
+		return sb.toString();
+	}
+
+}
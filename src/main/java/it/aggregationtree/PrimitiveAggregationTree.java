@@ -0,0 +1,145 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Base class of the aggregation trees specialised for primitive values. It
+ * handles the aggregation order and the navigation of the tree, while
+ * subclasses store and aggregate the values.
+ */
+abstract class PrimitiveAggregationTree<N extends PrimitiveNode<N>> {
+
+	protected final N root;
+	protected final LinkedHashSet<String> labelsOrder;
+
+	protected PrimitiveAggregationTree(LinkedHashSet<String> labelsOrder, N root) {
+		this.labelsOrder = labelsOrder;
+		this.root = root;
+	}
+
+	protected static LinkedHashSet<String> toOrder(String... labelsOrder) {
+		LinkedHashSet<String> order = new LinkedHashSet<String>();
+		for (int i = 0; i < labelsOrder.length; i++) {
+			order.add(labelsOrder[i]);
+		}
+		return order;
+	}
+
+	/**
+	 * Loads a dataset of rows into the aggregation tree.
+	 * 
+	 * @param data: the list of rows to be loaded into the tree.
+	 */
+	public void load(List<? extends Row<? extends Number>> data) {
+		for (Row<? extends Number> r : data) {
+			this.insert(r);
+		}
+	}
+
+	/**
+	 * Insert a row into the aggregation tree. The value of the row is converted to
+	 * the primitive type of the tree, while values that cannot be converted
+	 * exactly, such as fractional values for a tree of longs, are rejected.
+	 * 
+	 * @param row: the row to be inserted.
+	 */
+	public void insert(Row<? extends Number> row) {
+		String[] labelValues = this.toLabelValues(row);
+		this.insertValue(row.getValue(), labelValues);
+	}
+
+	/**
+	 * Retrieves the number of values aggregated at a specified aggregation level.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level, which
+	 *        must be a prefix of the aggregation order.
+	 * 
+	 * @return the number of values at the specified aggregation level.
+	 */
+	public long getCount(String... labelValues) {
+		return this.find(labelValues).getCount();
+	}
+
+	/**
+	 * Retrieves the mean of the values at a specified aggregation level, out of
+	 * the sum and the count maintained by its node.
+	 * 
+	 * @param labelValues: A list of labels defining the aggregation level.
+	 * 
+	 * @return the mean of the values, which is NaN if there are no values.
+	 */
+	public double getMean(String... labelValues) {
+		N node = this.find(labelValues);
+		return node.getSum() / node.getCount();
+	}
+
+	/**
+	 * Builds a tree-like representation of the tree to be printed for
+	 * visualization purpose.
+	 * 
+	 * @return the string containing the tree-like representation of the tree.
+	 */
+	public String printTree() {
+		return this.root.printPretty("", true);
+	}
+
+	// methods for subclasses
+
+	protected abstract N newNode(String label);
+
+	// inserts a value converted to the primitive type of the tree
+	protected abstract void insertValue(Number value, String[] labelValues);
+
+	// extracts the label values of a row following the aggregation order
+	protected String[] toLabelValues(Row<? extends Number> row) {
+		if (row.getValue() == null) {
+			throw new IllegalArgumentException("The inserted row does not have a value: " + row);
+		}
+		String[] labelValues = new String[this.labelsOrder.size()];
+		int i = 0;
+		for (String label : this.labelsOrder) {
+			labelValues[i] = row.getLabels().get(label);
+			if (labelValues[i] == null) {
+				throw new IllegalArgumentException(
+						"The inserted row misses a value for an aggregation dimension: " + row);
+			}
+			i = i + 1;
+		}
+		return labelValues;
+	}
+
+	protected void verifyInsert(String[] labelValues) {
+		if (labelValues.length != this.labelsOrder.size() || Arrays.asList(labelValues).contains(null)) {
+			throw new IllegalArgumentException(
+					"The inserted row misses a value for an aggregation dimension: " + Arrays.toString(labelValues));
+		}
+	}
+
+	protected N getOrCreateChild(N node, String label) {
+		N child = node.getChild(label);
+		if (child == null) {
+			child = this.newNode(label);
+			node.addChild(child);
+		}
+		return child;
+	}
+
+	// walks the tree down to the node identified by the label values
+	protected N find(String... labelValues) {
+		if (labelValues.length > this.labelsOrder.size()) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		}
+		N currentNode = this.root;
+		for (String labelValue : labelValues) {
+			N child = currentNode.getChild(labelValue);
+			if (child == null) {
+				throw new IllegalArgumentException("The provided query specifies a missing label value: " + labelValue);
+			}
+			currentNode = child;
+		}
+		return currentNode;
+	}
+
+}
@@ -0,0 +1,91 @@
+package it.aggregationtree;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base class of the nodes of the primitive-specialised aggregation trees. Every
+ * node counts and sums the values stored below it, while the values themselves are kept
+ * in primitive buffers by the nodes at the deepest level.
+ */
+abstract class PrimitiveNode<N extends PrimitiveNode<N>> {
+
+	private final Map<String, N> childs;
+	private final String label;
+	private long count;
+	// sum of the values stored below this node, whatever the reducer of the tree
+	private double sum;
+
+	protected PrimitiveNode(String label) {
+		this.label = label;
+		this.childs = new HashMap<String, N>();
+		this.count = 0;
+		this.sum = 0;
+	}
+
+	public String getLabel() {
+		return this.label;
+	}
+
+	public N getChild(String label) {
+		return this.childs.get(label);
+	}
+
+	public void addChild(N child) {
+		this.childs.put(child.getLabel(), child);
+	}
+
+	public Iterable<N> getChilds() {
+		return this.childs.values();
+	}
+
+	public long getCount() {
+		return this.count;
+	}
+
+	public double getSum() {
+		return this.sum;
+	}
+
+	// counts a value stored below this node
+	protected void count(double value) {
+		this.count = this.count + 1;
+		this.sum = this.sum + value;
+	}
+
+	/**
+	 * @return a textual representation of the values stored by this node.
+	 */
+	protected abstract String printValues();
+
+	public String printPretty(String indent, Boolean last) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(indent);
+
+		if (last) {
+			sb.append("\\-");
+			indent += "  ";
+		} else {
+			sb.append("|-");
+			indent += "| ";
+		}
+
+		sb.append(this.label);
+		sb.append("\n");
+
+		int count = 0;
+		for (N c : this.childs.values()) {
+			sb.append(c.printPretty(indent, count == this.childs.size() - 1));
+			count = count + 1;
+		}
+		if (this.childs.isEmpty() && this.count > 0) {
+			sb.append(indent);
+			sb.append("\\-");
+			sb.append(this.printValues());
+			sb.append("\n");
+		}
+
+		return sb.toString();
+	}
+
+}
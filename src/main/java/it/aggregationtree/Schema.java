@@ -0,0 +1,121 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * The dimensions of an aggregation order, each with the dictionary encoding its
+ * values. The schema defines the positions used by PositionalRow and by the
+ * encoded rows navigating the tree.
+ */
+public class Schema {
+
+	private final String[] dimensions;
+	private final Map<String, Integer> positions;
+	private final Dictionary[] dictionaries;
+
+	public Schema(LinkedHashSet<String> labelsOrder) {
+		this.dimensions = labelsOrder.toArray(new String[labelsOrder.size()]);
+		this.positions = new HashMap<String, Integer>();
+		this.dictionaries = new Dictionary[this.dimensions.length];
+		for (int i = 0; i < this.dimensions.length; i++) {
+			this.positions.put(this.dimensions[i], i);
+			this.dictionaries[i] = new Dictionary();
+		}
+	}
+
+	public Schema(String... labelsOrder) {
+		this(new LinkedHashSet<String>(Arrays.asList(labelsOrder)));
+	}
+
+	/**
+	 * @return the number of dimensions.
+	 */
+	public int size() {
+		return this.dimensions.length;
+	}
+
+	public String getDimension(int position) {
+		return this.dimensions[position];
+	}
+
+	/**
+	 * @return the position of a dimension, or -1 if the dimension is not part of
+	 *         the schema.
+	 */
+	public int indexOf(String dimension) {
+		Integer position = this.positions.get(dimension);
+		return position == null ? -1 : position;
+	}
+
+	public Dictionary getDictionary(int position) {
+		return this.dictionaries[position];
+	}
+
+	/**
+	 * Encodes label values given in schema order, assigning new codes to the
+	 * values not seen before.
+	 * 
+	 * @param labelValues: the label values, one for each dimension.
+	 * 
+	 * @return the codes of the label values.
+	 */
+	public int[] encode(String[] labelValues) {
+		int[] codes = new int[labelValues.length];
+		for (int i = 0; i < labelValues.length; i++) {
+			codes[i] = this.dictionaries[i].encode(labelValues[i]);
+		}
+		return codes;
+	}
+
+	/**
+	 * Decodes codes given in schema order.
+	 * 
+	 * @param codes: the codes, one for each dimension.
+	 * 
+	 * @return the label values having the given codes.
+	 */
+	public String[] decode(int[] codes) {
+		String[] labelValues = new String[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			labelValues[i] = this.dictionaries[i].decode(codes[i]);
+		}
+		return labelValues;
+	}
+
+	/**
+	 * Adapts a map-based row to a positional row following this schema. Labels
+	 * that are not part of the schema are dropped.
+	 * 
+	 * @param row: the row to be adapted.
+	 * 
+	 * @return the positional row, having null label values for the dimensions
+	 *         missing in the row.
+	 */
+	public <V> PositionalRow<V> toPositional(Row<V> row) {
+		String[] labelValues = new String[this.dimensions.length];
+		for (int i = 0; i < this.dimensions.length; i++) {
+			labelValues[i] = row.getLabel(this.dimensions[i]);
+		}
+		return new PositionalRow<V>(labelValues, row.getValue());
+	}
+
+	/**
+	 * Adapts a positional row following this schema to a map-based row.
+	 * 
+	 * @param row: the row to be adapted.
+	 * 
+	 * @return the map-based row.
+	 */
+	public <V> Row<V> toRow(PositionalRow<V> row) {
+		Row<V> result = new Row<V>();
+		for (int i = 0; i < this.dimensions.length; i++) {
+			result.addLabel(this.dimensions[i], row.getLabel(i));
+		}
+		result.setValue(row.getValue());
+		return result;
+	}
+
+}
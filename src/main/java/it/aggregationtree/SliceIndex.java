@@ -0,0 +1,158 @@
+package it.aggregationtree;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Inverted indexes of the groups at the deepest level of an aggregation tree.
+ * Every deepest group is numbered when it is created, and for each dimension
+ * the index maps the code of every label value to the bitmap of the groups
+ * having that value. Groups are identified by the path of their codes, so that
+ * they can be found in any snapshot of the tree.
+ *
+ * The index is copied on write like the nodes of the tree: a snapshot of the
+ * index shares its arrays and bitmaps, which are copied before the index is
+ * modified again.
+ */
+class SliceIndex {
+
+	private int[][] paths;
+	private int size;
+	// the bitmaps of every dimension, indexed by the codes of its values
+	private BitSet[][] bitmaps;
+	private long[][] epochs;
+	private long epoch;
+	private boolean shared;
+
+	SliceIndex(int dimensions) {
+		this.paths = new int[16][];
+		this.size = 0;
+		this.bitmaps = new BitSet[dimensions][16];
+		this.epochs = new long[dimensions][16];
+		this.epoch = 0;
+		this.shared = false;
+	}
+
+	private SliceIndex(SliceIndex index) {
+		this.paths = index.paths;
+		this.size = index.size;
+		this.bitmaps = index.bitmaps;
+		this.epochs = index.epochs;
+		this.epoch = index.epoch;
+		this.shared = true;
+	}
+
+	/**
+	 * Adds a new deepest group.
+	 *
+	 * @param codes: the codes of the label values of the group.
+	 *
+	 * @return the number of the group.
+	 */
+	synchronized int add(int[] codes) {
+		this.unshare();
+		int group = this.size;
+		// the paths array is only written past the size seen by the snapshots
+		if (group == this.paths.length) {
+			this.paths = Arrays.copyOf(this.paths, group * 2);
+		}
+		this.paths[group] = codes.clone();
+		this.size = group + 1;
+
+		for (int i = 0; i < codes.length; i++) {
+			this.bitmap(i, codes[i]).set(group);
+		}
+		return group;
+	}
+
+	/**
+	 * Removes the deepest group with the given codes, if any, as when the group
+	 * is pruned from the tree. Its number is not reused.
+	 *
+	 * @param codes: the codes of the label values of the group.
+	 */
+	synchronized void remove(int[] codes) {
+		BitSet groups = null;
+		for (int i = 0; i < codes.length; i++) {
+			BitSet bitmap = this.groups(i, codes[i]);
+			if (bitmap == null) {
+				return;
+			} else if (groups == null) {
+				groups = (BitSet) bitmap.clone();
+			} else {
+				groups.and(bitmap);
+			}
+		}
+		if (groups == null || groups.isEmpty()) {
+			return;
+		}
+		this.unshare();
+		for (int i = 0; i < codes.length; i++) {
+			this.bitmap(i, codes[i]).andNot(groups);
+		}
+	}
+
+	/**
+	 * @return the bitmap of the groups having the given value of a dimension, or
+	 *         null if there is no such group. The bitmap must not be modified.
+	 */
+	BitSet groups(int dimension, int code) {
+		BitSet[] dimensionBitmaps = this.bitmaps[dimension];
+		return code < dimensionBitmaps.length ? dimensionBitmaps[code] : null;
+	}
+
+	/**
+	 * @return the codes of the label values of a group.
+	 */
+	int[] path(int group) {
+		return this.paths[group];
+	}
+
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return a read-only view of the index as it is now.
+	 */
+	synchronized SliceIndex snapshot() {
+		SliceIndex snapshot = new SliceIndex(this);
+		this.shared = true;
+		this.epoch = this.epoch + 1;
+		return snapshot;
+	}
+
+	// private methods
+
+	private void unshare() {
+		if (this.shared) {
+			this.bitmaps = this.bitmaps.clone();
+			for (int i = 0; i < this.bitmaps.length; i++) {
+				this.bitmaps[i] = this.bitmaps[i].clone();
+			}
+			this.shared = false;
+		}
+	}
+
+	// the bitmap of a value of a dimension, created if missing and copied if it
+	// is shared with a snapshot
+	private BitSet bitmap(int dimension, int code) {
+		if (code >= this.bitmaps[dimension].length) {
+			int capacity = Math.max(code + 1, this.bitmaps[dimension].length * 2);
+			this.bitmaps[dimension] = Arrays.copyOf(this.bitmaps[dimension], capacity);
+			this.epochs[dimension] = Arrays.copyOf(this.epochs[dimension], capacity);
+		}
+		BitSet bitmap = this.bitmaps[dimension][code];
+		if (bitmap == null) {
+			bitmap = new BitSet();
+			this.bitmaps[dimension][code] = bitmap;
+			this.epochs[dimension][code] = this.epoch;
+		} else if (this.epochs[dimension][code] != this.epoch) {
+			bitmap = (BitSet) bitmap.clone();
+			this.bitmaps[dimension][code] = bitmap;
+			this.epochs[dimension][code] = this.epoch;
+		}
+		return bitmap;
+	}
+
+}
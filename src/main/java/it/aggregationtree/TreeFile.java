@@ -0,0 +1,315 @@
+package it.aggregationtree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import it.aggregationtree.utils.Codec;
+import it.aggregationtree.utils.MappedInput;
+
+/**
+ * Binary file holding an aggregation tree, written by AggregationTree.save and
+ * read by AggregationTree.open.
+ *
+ * The file starts with a header containing the magic number, the format
+ * version, the names of the dimensions, the flags of the tree and the
+ * dictionary of every dimension. The header is followed by the values of all
+ * the leaves, in the pre-order of their nodes, and by the structure of the tree:
+ * for every node in pre-order its code, its partial state, the number of values
+ * of its leaf and their size in bytes, and the number of its childs. The file
+ * ends with the offset of the structure and the magic number.
+ *
+ * When a file is read the structure and the partial states are loaded eagerly,
+ * while the values of every leaf stay in memory mapped windows of the file and
+ * are only decoded when the leaf is first accessed.
+ */
+final class TreeFile<V> {
+
+	static final int MAGIC = 0x41475452;
+	static final int VERSION = 1;
+	private static final int FOOTER_SIZE = 12;
+
+	final LinkedHashSet<String> labelsOrder;
+	final String[][] dictionaries;
+	final boolean coalescing;
+	final boolean hasPartials;
+	final Composite<V> root;
+
+	private TreeFile(LinkedHashSet<String> labelsOrder, String[][] dictionaries, boolean coalescing,
+			boolean hasPartials, Composite<V> root) {
+		this.labelsOrder = labelsOrder;
+		this.dictionaries = dictionaries;
+		this.coalescing = coalescing;
+		this.hasPartials = hasPartials;
+		this.root = root;
+	}
+
+	/**
+	 * Writes a tree to a file.
+	 *
+	 * @param output: the file to be written.
+	 * @param root: the root of the tree.
+	 * @param schema: the schema of the tree.
+	 * @param coalescing: whether the tree coalesces its values.
+	 * @param valueCodec: the codec of the values.
+	 * @param partialCodec: the codec of the partial states, or null if they are
+	 *        not to be written.
+	 */
+	static <V> void write(File output, Composite<V> root, Schema schema, boolean coalescing, Codec<V> valueCodec,
+			Codec<Object> partialCodec) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(
+				new BufferedOutputStream(new FileOutputStream(output), 1 << 16));
+		try (DataOutputStream out = new DataOutputStream(counter)) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(schema.size());
+			for (int i = 0; i < schema.size(); i++) {
+				writeString(out, schema.getDimension(i));
+			}
+			out.writeBoolean(coalescing);
+			out.writeBoolean(partialCodec != null);
+			for (int i = 0; i < schema.size(); i++) {
+				Dictionary dictionary = schema.getDictionary(i);
+				int size = dictionary.size();
+				out.writeInt(size);
+				for (int c = 0; c < size; c++) {
+					writeString(out, dictionary.decode(c));
+				}
+			}
+
+			// the byte size of every leaf is recorded to be written in the structure
+			LeafSizes sizes = new LeafSizes();
+			writeValues(out, counter, root, valueCodec, sizes);
+			long structureOffset = counter.count;
+			sizes.next = 0;
+			writeStructure(out, root, partialCodec, sizes);
+			out.writeLong(structureOffset);
+			out.writeInt(MAGIC);
+		}
+	}
+
+	/**
+	 * Reads a tree from a file. The values of the leaves are decoded lazily.
+	 *
+	 * @param input: the file to be read.
+	 * @param valueCodec: the codec of the values.
+	 * @param partialCodec: the codec of the partial states, or null if they are
+	 *        not to be read.
+	 *
+	 * @return the content of the file.
+	 */
+	static <V> TreeFile<V> read(File input, Codec<V> valueCodec, Codec<Object> partialCodec) throws IOException {
+		try (FileChannel channel = FileChannel.open(input.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < FOOTER_SIZE) {
+				throw new RuntimeException("The input file is not an aggregation tree file.");
+			}
+			MappedInput footer = new MappedInput(channel, size - FOOTER_SIZE, size);
+			long structureOffset = footer.getLong();
+			MappedInput header = new MappedInput(channel, 0, size);
+			if (footer.getInt() != MAGIC || header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new RuntimeException("The input file is not an aggregation tree file.");
+			}
+			int dimensions = header.getInt();
+			LinkedHashSet<String> labelsOrder = new LinkedHashSet<String>();
+			for (int i = 0; i < dimensions; i++) {
+				labelsOrder.add(header.getString());
+			}
+			boolean coalescing = header.get() != 0;
+			boolean filePartials = header.get() != 0;
+			String[][] dictionaries = new String[dimensions][];
+			for (int i = 0; i < dimensions; i++) {
+				dictionaries[i] = new String[header.getInt()];
+				for (int c = 0; c < dictionaries[i].length; c++) {
+					dictionaries[i][c] = header.getString();
+				}
+			}
+
+			MappedInput structure = new MappedInput(channel, structureOffset, size - FOOTER_SIZE);
+			Windows windows = new Windows(channel, header.position(), structureOffset);
+			Composite<V> root = readNode(structure, "All", dictionaries, 0, filePartials, partialCodec, valueCodec,
+					windows);
+			return new TreeFile<V>(labelsOrder, dictionaries, coalescing, filePartials && partialCodec != null, root);
+		}
+	}
+
+	// private methods
+
+	private static <V> void writeValues(DataOutputStream out, CountingOutputStream counter, Composite<V> node,
+			Codec<V> valueCodec, LeafSizes sizes) throws IOException {
+		Leaf<V> leaf = node.getLeaf();
+		if (leaf != null && leaf.size() > 0) {
+			long start = counter.count;
+			for (int i = 0; i < leaf.size(); i++) {
+				valueCodec.write(leaf.get(i), out);
+			}
+			sizes.add(counter.count - start);
+		}
+		for (Composite<V> child : node.getCompositeChilds()) {
+			writeValues(out, counter, child, valueCodec, sizes);
+		}
+	}
+
+	private static <V> void writeStructure(DataOutputStream out, Composite<V> node, Codec<Object> partialCodec,
+			LeafSizes sizes) throws IOException {
+		out.writeInt(node.getCode());
+		if (partialCodec != null) {
+			if (node.getPartial() == null) {
+				out.writeInt(-1);
+			} else {
+				// partial states are prefixed by their size, so that they can be read
+				// from a single window
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				partialCodec.write(node.getPartial(), new DataOutputStream(bytes));
+				out.writeInt(bytes.size());
+				bytes.writeTo(out);
+			}
+		}
+		Leaf<V> leaf = node.getLeaf();
+		if (leaf != null && leaf.size() > 0) {
+			out.writeInt(leaf.size());
+			out.writeLong(sizes.get(sizes.next));
+			sizes.next = sizes.next + 1;
+		} else {
+			out.writeInt(0);
+			out.writeLong(0);
+		}
+		out.writeInt(node.getCompositeChilds().size());
+		for (Composite<V> child : node.getCompositeChilds()) {
+			writeStructure(out, child, partialCodec, sizes);
+		}
+	}
+
+	// the partial states written in the file are skipped when no codec is given
+	private static <V> Composite<V> readNode(MappedInput structure, String label, String[][] dictionaries, int depth,
+			boolean partials, Codec<Object> partialCodec, Codec<V> valueCodec, Windows windows) throws IOException {
+		int code = structure.getInt();
+		Composite<V> node = new Composite<V>(label, code);
+		if (partials) {
+			int length = structure.getInt();
+			if (length >= 0) {
+				ByteBuffer buffer = structure.ensure(length);
+				int start = buffer.position();
+				if (partialCodec != null) {
+					node.setPartial(partialCodec.read(buffer));
+				}
+				buffer.position(start + length);
+			}
+		}
+		int count = structure.getInt();
+		long bytes = structure.getLong();
+		if (count > 0) {
+			ByteBuffer values = windows.next(bytes);
+			node.addChild(new Leaf<V>(count, () -> {
+				ByteBuffer input = values.duplicate();
+				Object[] array = new Object[count];
+				for (int i = 0; i < count; i++) {
+					array[i] = valueCodec.read(input);
+				}
+				return array;
+			}));
+		}
+		int childs = structure.getInt();
+		for (int i = 0; i < childs; i++) {
+			// the code of the child is read again when the child itself is read
+			ByteBuffer buffer = structure.ensure(4);
+			String childLabel = dictionaries[depth][buffer.getInt(buffer.position())];
+			node.addChild(readNode(structure, childLabel, dictionaries, depth + 1, partials, partialCodec, valueCodec,
+					windows));
+		}
+		return node;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// growable list of the byte sizes of the leaves, in pre-order
+	private static class LeafSizes {
+
+		private long[] sizes = new long[16];
+		private int size = 0;
+		private int next = 0;
+
+		private void add(long bytes) {
+			if (this.size == this.sizes.length) {
+				this.sizes = Arrays.copyOf(this.sizes, this.size * 2);
+			}
+			this.sizes[this.size] = bytes;
+			this.size = this.size + 1;
+		}
+
+		private long get(int index) {
+			return this.sizes[index];
+		}
+	}
+
+	// counts the bytes written, including the ones still buffered downstream
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count = 0;
+
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count = this.count + 1;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count = this.count + len;
+		}
+	}
+
+	// maps the values section in windows that never split the values of a leaf;
+	// the mappings stay valid after the channel is closed
+	private static class Windows {
+
+		private final FileChannel channel;
+		private final long end;
+		private long position;
+		private long windowStart;
+		private MappedByteBuffer window;
+
+		private Windows(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.end = end;
+			this.position = start;
+			this.windowStart = start;
+			this.window = null;
+		}
+
+		// returns a buffer positioned on the next bytes of the values section
+		private ByteBuffer next(long bytes) throws IOException {
+			if (this.window == null || this.position + bytes > this.windowStart + this.window.capacity()) {
+				long size = Math.max(bytes, Math.min(MappedInput.WINDOW_SIZE, this.end - this.position));
+				this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.position, size);
+				this.windowStart = this.position;
+			}
+			ByteBuffer buffer = this.window.duplicate();
+			buffer.position((int) (this.position - this.windowStart));
+			this.position = this.position + bytes;
+			return buffer;
+		}
+	}
+
+}
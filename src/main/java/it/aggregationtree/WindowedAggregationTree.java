@@ -0,0 +1,180 @@
+package it.aggregationtree;
+
+import java.util.function.Consumer;
+
+import it.aggregationtree.aggregators.Aggregator;
+
+/**
+ * Aggregation tree over a sliding window of time. Every row comes with the
+ * timestamp of its event, and the window is split into buckets of fixed
+ * duration, each one holding a coalescing aggregation tree of the rows whose
+ * timestamps fall into it. The trees are kept in a ring: when the window slides
+ * forward, each expired bucket is dropped in constant time by replacing its
+ * tree with an empty one, and queries are answered by merging the partial
+ * states of the queried node in the buckets of the window.
+ *
+ * The window slides with the latest timestamp of the inserted rows, or
+ * explicitly through advance(long timestamp) when no row arrives. Rows older
+ * than the window are not inserted.
+ */
+public class WindowedAggregationTree<V, R> {
+
+	private final Aggregator<V, Object, R> aggregator;
+	private final String[] labelsOrder;
+	private final long bucketMillis;
+	private final AggregationTree<V, R>[] trees;
+	// the bucket held by each slot of the ring, the buckets being numbered from
+	// the epoch
+	private final long[] buckets;
+	// the latest bucket of the window, valid once a bucket has been created
+	private long latest;
+	private boolean started;
+
+	// constructors
+
+	/**
+	 * @param aggregator: the aggregator of the values.
+	 * @param bucketMillis: the duration of a bucket, in milliseconds.
+	 * @param buckets: the number of buckets of the window, whose duration is
+	 *        bucketMillis * buckets.
+	 * @param labelsOrder: the aggregation order.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> WindowedAggregationTree(Aggregator<V, A, R> aggregator, long bucketMillis, int buckets,
+			String... labelsOrder) {
+		if (bucketMillis <= 0) {
+			throw new IllegalArgumentException("The duration of a bucket must be positive.");
+		}
+		if (buckets <= 0) {
+			throw new IllegalArgumentException("The number of buckets must be positive.");
+		}
+		this.aggregator = (Aggregator<V, Object, R>) aggregator;
+		this.labelsOrder = labelsOrder.clone();
+		this.bucketMillis = bucketMillis;
+		this.trees = (AggregationTree<V, R>[]) new AggregationTree<?, ?>[buckets];
+		this.buckets = new long[buckets];
+		this.started = false;
+	}
+
+	// public methods
+
+	/**
+	 * Insert a row into the bucket of its timestamp, sliding the window forward
+	 * if the timestamp is past its end.
+	 *
+	 * @param timestamp: the time of the event of the row, in milliseconds from
+	 *        the epoch.
+	 * @param row: the row to be inserted.
+	 *
+	 * @return true if the row was inserted, false if it is older than the window.
+	 */
+	public boolean insert(long timestamp, Row<V> row) {
+		return this.insert(timestamp, (tree) -> tree.insert(row));
+	}
+
+	/**
+	 * Insert a positional row into the bucket of its timestamp, as in insert(long
+	 * timestamp, Row<V> row). The label values of the row must follow the
+	 * aggregation order.
+	 *
+	 * @param timestamp: the time of the event of the row, in milliseconds from
+	 *        the epoch.
+	 * @param row: the row to be inserted.
+	 *
+	 * @return true if the row was inserted, false if it is older than the window.
+	 */
+	public boolean insert(long timestamp, PositionalRow<V> row) {
+		return this.insert(timestamp, (tree) -> tree.insert(row));
+	}
+
+	/**
+	 * Slides the window forward so that it ends with the bucket of the given
+	 * time, dropping the buckets expired in the meantime. The window never slides
+	 * backwards.
+	 *
+	 * @param timestamp: the current time, in milliseconds from the epoch.
+	 */
+	public void advance(long timestamp) {
+		long bucket = Math.floorDiv(timestamp, this.bucketMillis);
+		if (!this.started) {
+			this.latest = bucket;
+			this.started = true;
+		} else if (bucket > this.latest) {
+			// at most one drop per slot of the ring
+			long first = Math.max(this.latest + 1, bucket - this.trees.length + 1);
+			for (long b = first; b <= bucket; b++) {
+				this.trees[this.slot(b)] = null;
+			}
+			this.latest = bucket;
+		}
+	}
+
+	/**
+	 * Retrieves the aggregated value for a specified aggregation level over the
+	 * rows of the current window. A label value having no row in the window is
+	 * aggregated as an empty set of values.
+	 *
+	 * @param labelValues: A list of labels defining the aggregation level, which
+	 *        must be a prefix of the aggregation order as in
+	 *        AggregationTree.get(String... labelValues).
+	 *
+	 * @return the aggregated value for the specified aggregation level.
+	 */
+	public R get(String... labelValues) {
+		if (labelValues.length > this.labelsOrder.length) {
+			throw new IllegalArgumentException("The provided query specifies too many labels.");
+		}
+		Object partial = this.aggregator.init();
+		for (AggregationTree<V, R> tree : this.trees) {
+			Object bucketPartial = tree == null ? null : tree.getPartial(labelValues);
+			if (bucketPartial != null) {
+				partial = this.aggregator.merge(partial, bucketPartial);
+			}
+		}
+		return this.aggregator.finish(partial);
+	}
+
+	/**
+	 * @return the start of the current window, inclusive, in milliseconds from the
+	 *         epoch, or Long.MIN_VALUE if no row has been inserted yet.
+	 */
+	public long getWindowStart() {
+		return this.started ? (this.latest - this.trees.length + 1) * this.bucketMillis : Long.MIN_VALUE;
+	}
+
+	/**
+	 * @return the end of the current window, exclusive, in milliseconds from the
+	 *         epoch, or Long.MIN_VALUE if no row has been inserted yet.
+	 */
+	public long getWindowEnd() {
+		return this.started ? (this.latest + 1) * this.bucketMillis : Long.MIN_VALUE;
+	}
+
+	// private methods
+
+	// inserts into the tree of the bucket of a timestamp, sliding the window
+	// only once the insertion succeeded, so that a rejected row leaves the
+	// window as it was
+	private boolean insert(long timestamp, Consumer<AggregationTree<V, R>> insertion) {
+		long bucket = Math.floorDiv(timestamp, this.bucketMillis);
+		if (this.started && bucket <= this.latest - this.trees.length) {
+			return false;
+		}
+		int slot = this.slot(bucket);
+		AggregationTree<V, R> tree = this.trees[slot];
+		if (tree == null || this.buckets[slot] != bucket) {
+			tree = new AggregationTree<V, R>(this.aggregator, this.labelsOrder);
+			tree.setCoalescing(true);
+		}
+		insertion.accept(tree);
+		this.advance(timestamp);
+		this.trees[slot] = tree;
+		this.buckets[slot] = bucket;
+		return true;
+	}
+
+	private int slot(long bucket) {
+		return (int) Math.floorMod(bucket, (long) this.trees.length);
+	}
+
+}
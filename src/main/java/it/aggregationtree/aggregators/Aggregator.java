@@ -0,0 +1,56 @@
+package it.aggregationtree.aggregators;
+
+/**
+ * A decomposable aggregation function. Values are accumulated into a partial
+ * state, partial states can be merged together and the final aggregated value
+ * is computed from a partial state. This allows the AggregationTree to keep a
+ * partial state on every node and to update it incrementally when new rows are
+ * inserted.
+ * 
+ * accumulate and merge are allowed to update and return their first argument,
+ * while the second argument of merge and the argument of finish must never be
+ * modified.
+ * 
+ * @param <V>: the type of the values being aggregated.
+ * @param <A>: the type of the partial state.
+ * @param <R>: the type of the aggregated value.
+ */
+public interface Aggregator<V, A, R> {
+
+	/**
+	 * Creates the partial state of an empty set of values.
+	 * 
+	 * @return the empty partial state.
+	 */
+	public A init();
+
+	/**
+	 * Adds a value to a partial state.
+	 * 
+	 * @param partial: the partial state to be updated.
+	 * @param value: the value to be added.
+	 * 
+	 * @return the updated partial state.
+	 */
+	public A accumulate(A partial, V value);
+
+	/**
+	 * Merges two partial states.
+	 * 
+	 * @param partial: the partial state to be updated.
+	 * @param other: the partial state to be merged into the first one.
+	 * 
+	 * @return the merged partial state.
+	 */
+	public A merge(A partial, A other);
+
+	/**
+	 * Computes the aggregated value out of a partial state.
+	 * 
+	 * @param partial: the partial state.
+	 * 
+	 * @return the aggregated value.
+	 */
+	public R finish(A partial);
+
+}
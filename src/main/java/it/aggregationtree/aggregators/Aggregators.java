@@ -0,0 +1,347 @@
+package it.aggregationtree.aggregators;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Built-in aggregators that can be used when creating an AggregationTree.
+ * Counts, sums and averages are invertible, so that rows can be deleted from a
+ * tree without recomputing the partial states on their path.
+ */
+public class Aggregators {
+
+	private Aggregators() {
+	}
+
+	/**
+	 * Counts the aggregated values.
+	 */
+	public static <V> InvertibleAggregator<V, Long, Long> count() {
+		return new InvertibleAggregator<V, Long, Long>() {
+
+			public Long init() {
+				return 0L;
+			}
+
+			public Long accumulate(Long partial, V value) {
+				return partial + 1;
+			}
+
+			public Long retract(Long partial, V value) {
+				return partial - 1;
+			}
+
+			public boolean canRetract(Long partial, V value) {
+				return partial > 0;
+			}
+
+			public Long merge(Long partial, Long other) {
+				return partial + other;
+			}
+
+			public Long finish(Long partial) {
+				return partial;
+			}
+		};
+	}
+
+	/**
+	 * Sums integer values, producing an integer.
+	 */
+	public static InvertibleAggregator<Integer, Integer, Integer> intSum() {
+		return new InvertibleAggregator<Integer, Integer, Integer>() {
+
+			public Integer init() {
+				return 0;
+			}
+
+			public Integer accumulate(Integer partial, Integer value) {
+				return partial + value;
+			}
+
+			public Integer retract(Integer partial, Integer value) {
+				return partial - value;
+			}
+
+			public Integer merge(Integer partial, Integer other) {
+				return partial + other;
+			}
+
+			public Integer finish(Integer partial) {
+				return partial;
+			}
+		};
+	}
+
+	/**
+	 * Sums numeric values as longs.
+	 */
+	public static <V extends Number> InvertibleAggregator<V, Long, Long> longSum() {
+		return new InvertibleAggregator<V, Long, Long>() {
+
+			public Long init() {
+				return 0L;
+			}
+
+			public Long accumulate(Long partial, V value) {
+				return partial + value.longValue();
+			}
+
+			public Long retract(Long partial, V value) {
+				return partial - value.longValue();
+			}
+
+			public Long merge(Long partial, Long other) {
+				return partial + other;
+			}
+
+			public Long finish(Long partial) {
+				return partial;
+			}
+		};
+	}
+
+	/**
+	 * Sums numeric values as doubles.
+	 */
+	public static <V extends Number> InvertibleAggregator<V, Double, Double> doubleSum() {
+		return new InvertibleAggregator<V, Double, Double>() {
+
+			public Double init() {
+				return 0.0;
+			}
+
+			public Double accumulate(Double partial, V value) {
+				return partial + value.doubleValue();
+			}
+
+			public Double retract(Double partial, V value) {
+				return partial - value.doubleValue();
+			}
+
+			public Double merge(Double partial, Double other) {
+				return partial + other;
+			}
+
+			public Double finish(Double partial) {
+				return partial;
+			}
+		};
+	}
+
+	/**
+	 * Computes the minimum according to the natural ordering of the values. The
+	 * minimum of an empty set of values is null.
+	 */
+	public static <V extends Comparable<? super V>> Aggregator<V, V, V> min() {
+		return min(Comparator.<V>naturalOrder());
+	}
+
+	/**
+	 * Computes the minimum according to the given comparator. The minimum of an
+	 * empty set of values is null.
+	 */
+	public static <V> Aggregator<V, V, V> min(Comparator<? super V> comparator) {
+		return new Aggregator<V, V, V>() {
+
+			public V init() {
+				return null;
+			}
+
+			public V accumulate(V partial, V value) {
+				return this.merge(partial, value);
+			}
+
+			public V merge(V partial, V other) {
+				if (partial == null) {
+					return other;
+				} else if (other == null) {
+					return partial;
+				} else {
+					return comparator.compare(other, partial) < 0 ? other : partial;
+				}
+			}
+
+			public V finish(V partial) {
+				return partial;
+			}
+		};
+	}
+
+	/**
+	 * Computes the maximum according to the natural ordering of the values. The
+	 * maximum of an empty set of values is null.
+	 */
+	public static <V extends Comparable<? super V>> Aggregator<V, V, V> max() {
+		return max(Comparator.<V>naturalOrder());
+	}
+
+	/**
+	 * Computes the maximum according to the given comparator. The maximum of an
+	 * empty set of values is null.
+	 */
+	public static <V> Aggregator<V, V, V> max(Comparator<? super V> comparator) {
+		return min(comparator.reversed());
+	}
+
+	/**
+	 * Computes the arithmetic mean of numeric values. The partial state holds the
+	 * sum and the count of the values. The mean of an empty set of values is NaN.
+	 */
+	public static <V extends Number> InvertibleAggregator<V, double[], Double> average() {
+		return new InvertibleAggregator<V, double[], Double>() {
+
+			public double[] init() {
+				return new double[2];
+			}
+
+			public double[] accumulate(double[] partial, V value) {
+				partial[0] = partial[0] + value.doubleValue();
+				partial[1] = partial[1] + 1;
+				return partial;
+			}
+
+			public double[] retract(double[] partial, V value) {
+				partial[0] = partial[0] - value.doubleValue();
+				partial[1] = partial[1] - 1;
+				return partial;
+			}
+
+			public boolean canRetract(double[] partial, V value) {
+				return partial[1] > 0;
+			}
+
+			public double[] merge(double[] partial, double[] other) {
+				partial[0] = partial[0] + other[0];
+				partial[1] = partial[1] + other[1];
+				return partial;
+			}
+
+			public Double finish(double[] partial) {
+				return partial[0] / partial[1];
+			}
+		};
+	}
+
+	/**
+	 * Estimates the number of distinct values with a HyperLogLog sketch of the
+	 * default precision, whose relative standard error is about 1.6%.
+	 */
+	public static <V> Aggregator<V, HyperLogLog, Long> approxDistinct() {
+		return approxDistinct(HyperLogLog.DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Estimates the number of distinct values with a HyperLogLog sketch. The
+	 * partial state takes 2^precision bytes, whatever the number of values.
+	 */
+	public static <V> Aggregator<V, HyperLogLog, Long> approxDistinct(int precision) {
+		return new Aggregator<V, HyperLogLog, Long>() {
+
+			public HyperLogLog init() {
+				return new HyperLogLog(precision);
+			}
+
+			public HyperLogLog accumulate(HyperLogLog partial, V value) {
+				partial.add(value);
+				return partial;
+			}
+
+			public HyperLogLog merge(HyperLogLog partial, HyperLogLog other) {
+				partial.merge(other);
+				return partial;
+			}
+
+			public Long finish(HyperLogLog partial) {
+				return partial.estimate();
+			}
+		};
+	}
+
+	/**
+	 * Estimates a quantile of numeric values with a KLL sketch of the default
+	 * accuracy, e.g. quantile(0.95) for the 95th percentile. The quantile of an
+	 * empty set of values is NaN.
+	 */
+	public static <V extends Number> Aggregator<V, KllSketch, Double> quantile(double fraction) {
+		return quantile(fraction, quantiles(KllSketch.DEFAULT_K));
+	}
+
+	/**
+	 * Estimates a quantile like quantile(fraction), with sketches compacting
+	 * their values with a random source of the given seed, so that the same
+	 * values inserted in the same order always give the same estimate.
+	 */
+	public static <V extends Number> Aggregator<V, KllSketch, Double> quantile(double fraction, long seed) {
+		return quantile(fraction, quantiles(KllSketch.DEFAULT_K, seed));
+	}
+
+	/**
+	 * Summarizes the distribution of numeric values with a KLL sketch, so that
+	 * several quantiles can be estimated from the result of a single query. The
+	 * partial state takes O(k) values, whatever the number of values.
+	 */
+	public static <V extends Number> Aggregator<V, KllSketch, KllSketch> quantiles(int k) {
+		return sketches(() -> new KllSketch(k));
+	}
+
+	/**
+	 * Summarizes the distribution of numeric values like quantiles(k), with
+	 * sketches compacting their values with a random source of the given seed.
+	 */
+	public static <V extends Number> Aggregator<V, KllSketch, KllSketch> quantiles(int k, long seed) {
+		return sketches(() -> new KllSketch(k, new Random(seed)));
+	}
+
+	// private methods
+
+	private static <V extends Number> Aggregator<V, KllSketch, Double> quantile(double fraction,
+			Aggregator<V, KllSketch, KllSketch> quantiles) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("The fraction must be between 0 and 1.");
+		}
+		return new Aggregator<V, KllSketch, Double>() {
+
+			public KllSketch init() {
+				return quantiles.init();
+			}
+
+			public KllSketch accumulate(KllSketch partial, V value) {
+				return quantiles.accumulate(partial, value);
+			}
+
+			public KllSketch merge(KllSketch partial, KllSketch other) {
+				return quantiles.merge(partial, other);
+			}
+
+			public Double finish(KllSketch partial) {
+				return partial.quantile(fraction);
+			}
+		};
+	}
+
+	private static <V extends Number> Aggregator<V, KllSketch, KllSketch> sketches(Supplier<KllSketch> sketch) {
+		return new Aggregator<V, KllSketch, KllSketch>() {
+
+			public KllSketch init() {
+				return sketch.get();
+			}
+
+			public KllSketch accumulate(KllSketch partial, V value) {
+				partial.add(value.doubleValue());
+				return partial;
+			}
+
+			public KllSketch merge(KllSketch partial, KllSketch other) {
+				partial.merge(other);
+				return partial;
+			}
+
+			public KllSketch finish(KllSketch partial) {
+				return partial.copy();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,140 @@
+package it.aggregationtree.aggregators;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it. The
+ * sketch keeps 2^precision registers of one byte, whatever the number of values
+ * added, and two sketches can be merged into the sketch of the union of their
+ * values. The relative standard error of the estimate is about
+ * 1.04 / sqrt(2^precision), i.e. 1.6% with the default precision of 12.
+ */
+public class HyperLogLog {
+
+	public static final int DEFAULT_PRECISION = 12;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision: the number of bits of the hash selecting the register,
+	 *        between 4 and 18.
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 18) {
+			throw new IllegalArgumentException("The precision must be between 4 and 18.");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	private HyperLogLog(HyperLogLog other) {
+		this.precision = other.precision;
+		this.registers = other.registers.clone();
+	}
+
+	/**
+	 * Adds a value to the sketch.
+	 *
+	 * @param value: the value to be added.
+	 */
+	public void add(Object value) {
+		long hash = hash(value);
+		int register = (int) (hash >>> (64 - this.precision));
+		// rank of the first set bit among the remaining bits
+		long rest = (hash << this.precision) | (1L << (this.precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > this.registers[register]) {
+			this.registers[register] = rank;
+		}
+	}
+
+	/**
+	 * Merges another sketch with the same precision into this one.
+	 *
+	 * @param other: the sketch to be merged, which is not modified.
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != this.precision) {
+			throw new IllegalArgumentException("Sketches with different precisions cannot be merged.");
+		}
+		for (int i = 0; i < this.registers.length; i++) {
+			if (other.registers[i] > this.registers[i]) {
+				this.registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values added to the sketch.
+	 */
+	public long estimate() {
+		int m = this.registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : this.registers) {
+			sum = sum + Math.scalb(1.0, -register);
+			if (register == 0) {
+				zeros = zeros + 1;
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+		// linear counting is more accurate for small cardinalities
+		if (estimate <= 2.5 * m && zeros > 0) {
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	public int getPrecision() {
+		return this.precision;
+	}
+
+	/**
+	 * @return a copy of this sketch.
+	 */
+	public HyperLogLog copy() {
+		return new HyperLogLog(this);
+	}
+
+	// private methods
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	// 64 bit hash: numbers and strings are hashed on their full content, other
+	// values on their hash code
+	static long hash(Object value) {
+		long hash;
+		if (value instanceof Double || value instanceof Float) {
+			hash = Double.doubleToLongBits(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			hash = ((Number) value).longValue();
+		} else if (value instanceof CharSequence) {
+			CharSequence chars = (CharSequence) value;
+			hash = 0xcbf29ce484222325L;
+			for (int i = 0; i < chars.length(); i++) {
+				hash = (hash ^ chars.charAt(i)) * 0x100000001b3L;
+			}
+		} else {
+			hash = value.hashCode();
+		}
+		// finalizer of MurmurHash3, spreading the bits of the hash
+		hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+		hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 33);
+	}
+
+}
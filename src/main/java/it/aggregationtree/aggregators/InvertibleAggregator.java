@@ -0,0 +1,43 @@
+package it.aggregationtree.aggregators;
+
+/**
+ * A decomposable aggregation function whose accumulation can be undone. This
+ * allows the AggregationTree to remove a value from the partial states on its
+ * path in constant time per node, instead of recomputing them from the
+ * remaining values.
+ *
+ * retract is allowed to update and return its first argument, like accumulate.
+ *
+ * @param <V>: the type of the values being aggregated.
+ * @param <A>: the type of the partial state.
+ * @param <R>: the type of the aggregated value.
+ */
+public interface InvertibleAggregator<V, A, R> extends Aggregator<V, A, R> {
+
+	/**
+	 * Removes a value from a partial state the value was accumulated into.
+	 *
+	 * @param partial: the partial state to be updated.
+	 * @param value: the value to be removed.
+	 *
+	 * @return the updated partial state.
+	 */
+	public A retract(A partial, V value);
+
+	/**
+	 * Tells whether a value can have been accumulated into a partial state, so
+	 * that it can be retracted from it. Aggregators keeping a count refuse to
+	 * retract from a partial state counting no value, while by default every
+	 * value can be retracted.
+	 *
+	 * @param partial: the partial state the value would be retracted from.
+	 * @param value: the value to be retracted.
+	 *
+	 * @return false if the value cannot have been accumulated into the partial
+	 *         state.
+	 */
+	public default boolean canRetract(A partial, V value) {
+		return true;
+	}
+
+}
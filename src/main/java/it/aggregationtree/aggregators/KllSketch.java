@@ -0,0 +1,243 @@
+package it.aggregationtree.aggregators;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL sketch summarizing the distribution of the numeric values added to it,
+ * so that their quantiles can be estimated. The values are kept in a hierarchy
+ * of compactors: when the sketch is full, a level is sorted and every other
+ * value is promoted to the next level, where each value stands for twice as
+ * many values. The size of the sketch is O(k) whatever the number of values
+ * added, two sketches can be merged into the sketch of the union of their
+ * values, and the rank error of the estimated quantiles is about 1.65 / k, i.e.
+ * under 1% with the default k of 200.
+ */
+public class KllSketch {
+
+	public static final int DEFAULT_K = 200;
+	// ratio between the capacities of consecutive levels
+	private static final double DECAY = 2.0 / 3.0;
+	private static final int MIN_CAPACITY = 8;
+
+	private final int k;
+	// source of the compaction offsets, or null for the thread's own
+	private final Random random;
+	private double[][] levels;
+	private int[] sizes;
+	// number of values retained by all the levels, and their total capacity
+	private int retained;
+	private int capacity;
+	private long count;
+	private double min;
+	private double max;
+
+	public KllSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * @param k: the accuracy parameter of the sketch, at least 8.
+	 */
+	public KllSketch(int k) {
+		this(k, null);
+	}
+
+	/**
+	 * @param k: the accuracy parameter of the sketch, at least 8.
+	 * @param random: the random source choosing which values are promoted by
+	 *        the compactions, so that a seeded source makes the estimates
+	 *        reproducible. It is shared with the copies of the sketch.
+	 */
+	public KllSketch(int k, Random random) {
+		if (k < MIN_CAPACITY) {
+			throw new IllegalArgumentException("The accuracy parameter must be at least " + MIN_CAPACITY + ".");
+		}
+		this.k = k;
+		this.random = random;
+		this.levels = new double[1][];
+		this.levels[0] = new double[MIN_CAPACITY];
+		this.sizes = new int[1];
+		this.retained = 0;
+		this.capacity = this.capacity(0);
+		this.count = 0;
+		this.min = Double.NaN;
+		this.max = Double.NaN;
+	}
+
+	private KllSketch(KllSketch other) {
+		this.k = other.k;
+		this.random = other.random;
+		this.levels = new double[other.levels.length][];
+		for (int h = 0; h < this.levels.length; h++) {
+			this.levels[h] = Arrays.copyOf(other.levels[h], Math.max(MIN_CAPACITY, other.sizes[h]));
+		}
+		this.sizes = other.sizes.clone();
+		this.retained = other.retained;
+		this.capacity = other.capacity;
+		this.count = other.count;
+		this.min = other.min;
+		this.max = other.max;
+	}
+
+	/**
+	 * Adds a value to the sketch.
+	 *
+	 * @param value: the value to be added.
+	 */
+	public void add(double value) {
+		this.append(0, value);
+		this.count = this.count + 1;
+		this.min = this.count == 1 ? value : Math.min(this.min, value);
+		this.max = this.count == 1 ? value : Math.max(this.max, value);
+		this.compress();
+	}
+
+	/**
+	 * Merges another sketch into this one.
+	 *
+	 * @param other: the sketch to be merged, which is not modified.
+	 */
+	public void merge(KllSketch other) {
+		if (other.count == 0) {
+			return;
+		}
+		for (int h = 0; h < other.levels.length; h++) {
+			for (int i = 0; i < other.sizes[h]; i++) {
+				this.append(h, other.levels[h][i]);
+			}
+		}
+		this.min = this.count == 0 ? other.min : Math.min(this.min, other.min);
+		this.max = this.count == 0 ? other.max : Math.max(this.max, other.max);
+		this.count = this.count + other.count;
+		this.compress();
+	}
+
+	/**
+	 * Estimates a quantile of the values added to the sketch.
+	 *
+	 * @param fraction: the fraction of the values below the quantile, between 0
+	 *        and 1, e.g. 0.95 for the 95th percentile.
+	 *
+	 * @return the estimated quantile, or NaN if the sketch is empty.
+	 */
+	public double quantile(double fraction) {
+		if (fraction < 0 || fraction > 1) {
+			throw new IllegalArgumentException("The fraction must be between 0 and 1.");
+		}
+		if (this.count == 0) {
+			return Double.NaN;
+		}
+		if (fraction == 0) {
+			return this.min;
+		}
+		if (fraction == 1) {
+			return this.max;
+		}
+		// the retained values, each weighing 2^level values
+		int retained = this.retained;
+		double[] values = new double[retained];
+		long[] weights = new long[retained];
+		int index = 0;
+		for (int h = 0; h < this.levels.length; h++) {
+			for (int i = 0; i < this.sizes[h]; i++) {
+				values[index] = this.levels[h][i];
+				weights[index] = 1L << h;
+				index = index + 1;
+			}
+		}
+		Integer[] order = new Integer[retained];
+		for (int i = 0; i < retained; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+		long total = 0;
+		for (long weight : weights) {
+			total = total + weight;
+		}
+		double target = fraction * total;
+		long cumulative = 0;
+		for (int i : order) {
+			cumulative = cumulative + weights[i];
+			if (cumulative >= target) {
+				return values[i];
+			}
+		}
+		return this.max;
+	}
+
+	/**
+	 * @return the number of values added to the sketch.
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * @return a copy of this sketch.
+	 */
+	public KllSketch copy() {
+		return new KllSketch(this);
+	}
+
+	// private methods
+
+	private void append(int level, double value) {
+		if (level == this.levels.length) {
+			this.levels = Arrays.copyOf(this.levels, level + 1);
+			this.levels[level] = new double[MIN_CAPACITY];
+			this.sizes = Arrays.copyOf(this.sizes, level + 1);
+			this.capacity = 0;
+			for (int h = 0; h < this.levels.length; h++) {
+				this.capacity = this.capacity + this.capacity(h);
+			}
+		}
+		if (this.sizes[level] == this.levels[level].length) {
+			this.levels[level] = Arrays.copyOf(this.levels[level],
+					Math.max(MIN_CAPACITY, this.sizes[level] * 2));
+		}
+		this.levels[level][this.sizes[level]] = value;
+		this.sizes[level] = this.sizes[level] + 1;
+		this.retained = this.retained + 1;
+	}
+
+	private int capacity(int level) {
+		int depth = this.levels.length - level - 1;
+		return Math.max(MIN_CAPACITY / 4, (int) Math.ceil(this.k * Math.pow(DECAY, depth)));
+	}
+
+	// compacts the lowest levels exceeding their capacity until the sketch fits
+	private void compress() {
+		while (this.retained > this.capacity) {
+			int level = 0;
+			while (this.sizes[level] < this.capacity(level) && level < this.levels.length - 1) {
+				level = level + 1;
+			}
+			this.compact(level);
+		}
+	}
+
+	// promotes every other value of a level to the next one
+	private void compact(int level) {
+		double[] values = this.levels[level];
+		int size = this.sizes[level];
+		Arrays.sort(values, 0, size);
+		// an odd value out stays at this level
+		int compacted = size - (size % 2);
+		Random random = this.random == null ? ThreadLocalRandom.current() : this.random;
+		int offset = random.nextBoolean() ? 1 : 0;
+		double leftover = values[size - 1];
+		for (int i = offset; i < compacted; i = i + 2) {
+			this.append(level + 1, values[i]);
+		}
+		this.sizes[level] = 0;
+		this.retained = this.retained - compacted;
+		if (size % 2 == 1) {
+			this.levels[level][0] = leftover;
+			this.sizes[level] = 1;
+		}
+	}
+
+}
@@ -0,0 +1,79 @@
+package it.aggregationtree.aggregators;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The values of the measures of a Measures aggregator for a group. Every
+ * measure is finished when it is first read, so that reading a subset of the
+ * measures only costs the finishing of that subset. A record can be read by
+ * several threads, as when it is cached by the tree: each measure is finished
+ * once, under the lock of the record.
+ */
+public class MeasureRecord {
+
+	private static final Object UNFINISHED = new Object();
+
+	private final List<String> names;
+	private final List<? extends Aggregator<?, Object, ?>> aggregators;
+	private final Object[] partials;
+	private final Object[] values;
+
+	MeasureRecord(List<String> names, List<? extends Aggregator<?, Object, ?>> aggregators, Object[] partials) {
+		this.names = names;
+		this.aggregators = aggregators;
+		this.partials = partials;
+		this.values = new Object[partials.length];
+		for (int i = 0; i < this.values.length; i++) {
+			this.values[i] = UNFINISHED;
+		}
+	}
+
+	/**
+	 * Returns the value of a measure.
+	 * 
+	 * @param name: the name of the measure.
+	 * 
+	 * @return the value of the measure, cast to the type expected by the caller.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R get(String name) {
+		int index = this.names.indexOf(name);
+		if (index < 0) {
+			throw new IllegalArgumentException("Unknown measure: " + name);
+		}
+		synchronized (this.values) {
+			if (this.values[index] == UNFINISHED) {
+				this.values[index] = this.aggregators.get(index).finish(this.partials[index]);
+			}
+			return (R) this.values[index];
+		}
+	}
+
+	/**
+	 * @param names: the names of the measures to be read, or none to read them
+	 *        all.
+	 * 
+	 * @return the values of the requested measures, keyed by name.
+	 */
+	public Map<String, Object> toMap(String... names) {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		if (names.length == 0) {
+			for (String name : this.names) {
+				map.put(name, this.get(name));
+			}
+		} else {
+			for (String name : names) {
+				map.put(name, this.get(name));
+			}
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return this.toMap().toString();
+	}
+
+}
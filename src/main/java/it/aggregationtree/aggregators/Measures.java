@@ -0,0 +1,97 @@
+package it.aggregationtree.aggregators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Aggregator computing several named measures at once. The partial state of
+ * Measures holds the partial state of every measure, so that all the measures
+ * are maintained by a single tree and computed by a single aggregation. The
+ * aggregated value is a MeasureRecord, which only finishes the measures that
+ * are read from it.
+ * 
+ * Measures are added before the aggregator is used:
+ * 
+ * <pre>
+ * Measures&lt;Integer&gt; measures = new Measures&lt;Integer&gt;().add("sum", Aggregators.intSum())
+ * 		.add("count", Aggregators.count()).add("average", Aggregators.average());
+ * </pre>
+ * 
+ * @param <V>: the type of the values being aggregated.
+ */
+public class Measures<V> implements Aggregator<V, Object[], MeasureRecord> {
+
+	private final List<String> names;
+	private final List<Aggregator<V, Object, ?>> aggregators;
+	private boolean started;
+
+	public Measures() {
+		this.names = new ArrayList<String>();
+		this.aggregators = new ArrayList<Aggregator<V, Object, ?>>();
+		this.started = false;
+	}
+
+	/**
+	 * Adds a named measure.
+	 * 
+	 * @param name: the name of the measure.
+	 * @param aggregator: the aggregator computing the measure.
+	 * 
+	 * @return this object, so that calls can be chained.
+	 */
+	@SuppressWarnings("unchecked")
+	public <A> Measures<V> add(String name, Aggregator<? super V, A, ?> aggregator) {
+		if (this.started) {
+			throw new IllegalStateException("Measures cannot be added once the aggregation has started.");
+		}
+		if (this.names.contains(name)) {
+			throw new IllegalArgumentException("The measure is already defined: " + name);
+		}
+		this.names.add(name);
+		this.aggregators.add((Aggregator<V, Object, ?>) aggregator);
+		return this;
+	}
+
+	/**
+	 * @return the names of the measures, in the order they were added.
+	 */
+	public List<String> getNames() {
+		return Collections.unmodifiableList(this.names);
+	}
+
+	public Object[] init() {
+		this.started = true;
+		Object[] partial = new Object[this.aggregators.size()];
+		for (int i = 0; i < partial.length; i++) {
+			partial[i] = this.aggregators.get(i).init();
+		}
+		return partial;
+	}
+
+	public Object[] accumulate(Object[] partial, V value) {
+		for (int i = 0; i < partial.length; i++) {
+			partial[i] = this.aggregators.get(i).accumulate(partial[i], value);
+		}
+		return partial;
+	}
+
+	public Object[] merge(Object[] partial, Object[] other) {
+		for (int i = 0; i < partial.length; i++) {
+			partial[i] = this.aggregators.get(i).merge(partial[i], other[i]);
+		}
+		return partial;
+	}
+
+	/**
+	 * Returns the record of the measures. The partial states are copied, so that
+	 * the record is not affected by later updates of the tree, but the measures
+	 * are only finished when read.
+	 */
+	public MeasureRecord finish(Object[] partial) {
+		Object[] copy = this.init();
+		this.merge(copy, partial);
+		return new MeasureRecord(this.names, this.aggregators, copy);
+	}
+
+}
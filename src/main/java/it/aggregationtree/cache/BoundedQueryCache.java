@@ -0,0 +1,153 @@
+package it.aggregationtree.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Base class of the caches holding values within a budget. The weight of each
+ * value is computed by a weigher: counting each value as 1 bounds the number of
+ * entries, while estimating the size of each value bounds the memory used by
+ * the cache. Subclasses choose which value is evicted when the budget is
+ * exceeded.
+ * 
+ * @param <R>: the type of the cached aggregated values.
+ */
+public abstract class BoundedQueryCache<R> implements QueryCache<R> {
+
+	private final long budget;
+	private final ToLongFunction<? super R> weigher;
+	private final Map<Object, Entry<R>> entries;
+	private final CacheStats stats;
+	private long weight;
+
+	protected BoundedQueryCache(long budget, ToLongFunction<? super R> weigher) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("The budget of the cache must be positive.");
+		}
+		this.budget = budget;
+		this.weigher = weigher;
+		this.entries = new HashMap<Object, Entry<R>>();
+		this.stats = new CacheStats();
+		this.weight = 0;
+	}
+
+	public R get(Object key) {
+		Entry<R> entry = this.entries.get(key);
+		if (entry == null) {
+			this.stats.recordMiss();
+			return null;
+		} else {
+			this.stats.recordHit();
+			this.onAccess(key);
+			return entry.value;
+		}
+	}
+
+	public void put(Object key, R value) {
+		if (value == null) {
+			return;
+		}
+		long valueWeight = this.weigher.applyAsLong(value);
+		if (valueWeight > this.budget) {
+			// the value would evict everything else, thus it is not cached
+			this.invalidate(key);
+			return;
+		}
+		Entry<R> previous = this.entries.get(key);
+		if (previous != null) {
+			this.entries.put(key, new Entry<R>(value, valueWeight));
+			this.weight = this.weight - previous.weight + valueWeight;
+			this.onAccess(key);
+			this.evict(this.budget);
+		} else {
+			// room is made before inserting, so that the new value is not the victim
+			this.evict(this.budget - valueWeight);
+			this.entries.put(key, new Entry<R>(value, valueWeight));
+			this.weight = this.weight + valueWeight;
+			this.onInsert(key);
+		}
+	}
+
+	public void invalidate(Object key) {
+		if (this.entries.containsKey(key)) {
+			this.remove(key);
+		}
+	}
+
+	public void clear() {
+		this.entries.clear();
+		this.weight = 0;
+		this.onClear();
+	}
+
+	public int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * @return the total weight of the cached values.
+	 */
+	public long getWeight() {
+		return this.weight;
+	}
+
+	public long getBudget() {
+		return this.budget;
+	}
+
+	public CacheStats getStats() {
+		return this.stats;
+	}
+
+	// eviction policy hooks
+
+	/**
+	 * Called after a new key has been added to the cache.
+	 */
+	protected abstract void onInsert(Object key);
+
+	/**
+	 * Called after a cached key has been read or overwritten.
+	 */
+	protected abstract void onAccess(Object key);
+
+	/**
+	 * Called after a key has been removed from the cache.
+	 */
+	protected abstract void onRemove(Object key);
+
+	/**
+	 * Called after the cache has been cleared.
+	 */
+	protected abstract void onClear();
+
+	/**
+	 * @return the key to be evicted next.
+	 */
+	protected abstract Object selectVictim();
+
+	private void evict(long target) {
+		while (this.weight > target) {
+			this.remove(this.selectVictim());
+			this.stats.recordEviction();
+		}
+	}
+
+	private void remove(Object key) {
+		Entry<R> removed = this.entries.remove(key);
+		this.weight = this.weight - removed.weight;
+		this.onRemove(key);
+	}
+
+	private static class Entry<R> {
+
+		private final R value;
+		private final long weight;
+
+		public Entry(R value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
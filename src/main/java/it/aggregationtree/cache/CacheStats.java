@@ -0,0 +1,59 @@
+package it.aggregationtree.cache;
+
+/**
+ * Counters describing the behaviour of a QueryCache.
+ */
+public class CacheStats {
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the ratio of lookups that found a cached value, or 0 if no lookup
+	 *         has been performed.
+	 */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0.0 : (double) this.hits / lookups;
+	}
+
+	void recordHit() {
+		this.hits = this.hits + 1;
+	}
+
+	void recordMiss() {
+		this.misses = this.misses + 1;
+	}
+
+	void recordEviction() {
+		this.evictions = this.evictions + 1;
+	}
+
+	/**
+	 * Sets all the counters back to 0, e.g. to measure the cache over a given
+	 * workload.
+	 */
+	public void reset() {
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions;
+	}
+}
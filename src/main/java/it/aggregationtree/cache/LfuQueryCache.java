@@ -0,0 +1,89 @@
+package it.aggregationtree.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache evicting the least frequently used values first. Among the
+ * values used the same number of times, the oldest one is evicted.
+ * 
+ * @param <R>: the type of the cached aggregated values.
+ */
+public class LfuQueryCache<R> extends BoundedQueryCache<R> {
+
+	private final Map<Object, Long> frequencies;
+	// keys grouped by frequency, each group from the oldest to the newest
+	private final TreeMap<Long, LinkedHashSet<Object>> byFrequency;
+
+	/**
+	 * Creates a cache holding at most the given number of values.
+	 * 
+	 * @param maxEntries: the maximum number of cached values.
+	 */
+	public LfuQueryCache(long maxEntries) {
+		this(maxEntries, (v) -> 1L);
+	}
+
+	/**
+	 * Creates a cache whose values weigh at most the given budget.
+	 * 
+	 * @param budget: the maximum total weight of the cached values.
+	 * @param weigher: the function computing the weight of a value, e.g. an
+	 *        estimate of its size in bytes.
+	 */
+	public LfuQueryCache(long budget, ToLongFunction<? super R> weigher) {
+		super(budget, weigher);
+		this.frequencies = new HashMap<Object, Long>();
+		this.byFrequency = new TreeMap<Long, LinkedHashSet<Object>>();
+	}
+
+	@Override
+	protected void onInsert(Object key) {
+		this.frequencies.put(key, 1L);
+		this.group(1L).add(key);
+	}
+
+	@Override
+	protected void onAccess(Object key) {
+		Long frequency = this.frequencies.get(key);
+		this.ungroup(frequency, key);
+		this.frequencies.put(key, frequency + 1);
+		this.group(frequency + 1).add(key);
+	}
+
+	@Override
+	protected void onRemove(Object key) {
+		this.ungroup(this.frequencies.remove(key), key);
+	}
+
+	@Override
+	protected void onClear() {
+		this.frequencies.clear();
+		this.byFrequency.clear();
+	}
+
+	@Override
+	protected Object selectVictim() {
+		return this.byFrequency.firstEntry().getValue().iterator().next();
+	}
+
+	private LinkedHashSet<Object> group(Long frequency) {
+		LinkedHashSet<Object> group = this.byFrequency.get(frequency);
+		if (group == null) {
+			group = new LinkedHashSet<Object>();
+			this.byFrequency.put(frequency, group);
+		}
+		return group;
+	}
+
+	private void ungroup(Long frequency, Object key) {
+		LinkedHashSet<Object> group = this.byFrequency.get(frequency);
+		group.remove(key);
+		if (group.isEmpty()) {
+			this.byFrequency.remove(frequency);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package it.aggregationtree.cache;
+
+import java.util.LinkedHashSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache evicting the least recently used values first.
+ * 
+ * @param <R>: the type of the cached aggregated values.
+ */
+public class LruQueryCache<R> extends BoundedQueryCache<R> {
+
+	// keys from the least to the most recently used
+	private final LinkedHashSet<Object> recency;
+
+	/**
+	 * Creates a cache holding at most the given number of values.
+	 * 
+	 * @param maxEntries: the maximum number of cached values.
+	 */
+	public LruQueryCache(long maxEntries) {
+		this(maxEntries, (v) -> 1L);
+	}
+
+	/**
+	 * Creates a cache whose values weigh at most the given budget.
+	 * 
+	 * @param budget: the maximum total weight of the cached values.
+	 * @param weigher: the function computing the weight of a value, e.g. an
+	 *        estimate of its size in bytes.
+	 */
+	public LruQueryCache(long budget, ToLongFunction<? super R> weigher) {
+		super(budget, weigher);
+		this.recency = new LinkedHashSet<Object>();
+	}
+
+	@Override
+	protected void onInsert(Object key) {
+		this.recency.add(key);
+	}
+
+	@Override
+	protected void onAccess(Object key) {
+		this.recency.remove(key);
+		this.recency.add(key);
+	}
+
+	@Override
+	protected void onRemove(Object key) {
+		this.recency.remove(key);
+	}
+
+	@Override
+	protected void onClear() {
+		this.recency.clear();
+	}
+
+	@Override
+	protected Object selectVictim() {
+		return this.recency.iterator().next();
+	}
+}
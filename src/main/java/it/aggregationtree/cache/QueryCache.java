@@ -0,0 +1,52 @@
+package it.aggregationtree.cache;
+
+/**
+ * A cache of previously queried aggregated values. The AggregationTree uses
+ * the queried nodes as keys, and invalidates the nodes on the path of every
+ * inserted row.
+ * 
+ * @param <R>: the type of the cached aggregated values.
+ */
+public interface QueryCache<R> {
+
+	/**
+	 * Retrieves a cached aggregated value.
+	 * 
+	 * @param key: the key of the value.
+	 * 
+	 * @return the cached value, or null if the cache does not contain the key.
+	 */
+	public R get(Object key);
+
+	/**
+	 * Stores an aggregated value, evicting other values if the budget of the
+	 * cache is exceeded. Null values are not cached.
+	 * 
+	 * @param key: the key of the value.
+	 * @param value: the value to be cached.
+	 */
+	public void put(Object key, R value);
+
+	/**
+	 * Removes a value from the cache, if present.
+	 * 
+	 * @param key: the key of the value to be removed.
+	 */
+	public void invalidate(Object key);
+
+	/**
+	 * Removes all the values from the cache.
+	 */
+	public void clear();
+
+	/**
+	 * @return the number of cached values.
+	 */
+	public int size();
+
+	/**
+	 * @return the hit, miss and eviction counters of the cache.
+	 */
+	public CacheStats getStats();
+
+}
@@ -0,0 +1,48 @@
+package it.aggregationtree.exceptions;
+
+/**
+ * Describes a record of an input file that could not be loaded.
+ */
+public class RecordParseException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final long record;
+	private final long offset;
+	private final int line;
+	private final int column;
+
+	/**
+	 * @param reason: the reason why the record could not be loaded.
+	 * @param record: the index of the record in the input, starting from 0.
+	 * @param offset: the offset of the record in the input, in bytes, or -1 if
+	 *        unknown.
+	 * @param line: the line of the record in the input, or -1 if unknown.
+	 * @param column: the column of the record in the input, or -1 if unknown.
+	 */
+	public RecordParseException(String reason, long record, long offset, int line, int column) {
+		super("Error loading record " + record + " at offset " + offset + " (line " + line + ", column " + column
+				+ "): " + reason);
+		this.record = record;
+		this.offset = offset;
+		this.line = line;
+		this.column = column;
+	}
+
+	public long getRecord() {
+		return record;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+
+}
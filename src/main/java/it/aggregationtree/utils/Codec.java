@@ -0,0 +1,87 @@
+package it.aggregationtree.utils;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Writes values to a binary stream and reads them back from a buffer, as done
+ * when saving an aggregation tree to a file and opening it again.
+ *
+ * @param <T>: the type of the values.
+ */
+public interface Codec<T> {
+
+	public static final Codec<Integer> INTEGER = Codec.of((v, out) -> out.writeInt(v), ByteBuffer::getInt);
+
+	public static final Codec<Long> LONG = Codec.of((v, out) -> out.writeLong(v), ByteBuffer::getLong);
+
+	public static final Codec<Double> DOUBLE = Codec.of((v, out) -> out.writeDouble(v), ByteBuffer::getDouble);
+
+	public static final Codec<String> STRING = Codec.of((v, out) -> {
+		byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}, (in) -> {
+		byte[] bytes = new byte[in.getInt()];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	});
+
+	// the partial state of Aggregators.average()
+	public static final Codec<double[]> DOUBLE_ARRAY = Codec.of((v, out) -> {
+		out.writeInt(v.length);
+		for (double d : v) {
+			out.writeDouble(d);
+		}
+	}, (in) -> {
+		double[] array = new double[in.getInt()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = in.getDouble();
+		}
+		return array;
+	});
+
+	/**
+	 * @param value: the value to be written, which is never null.
+	 * @param output: the stream the value is written to.
+	 */
+	public void write(T value, DataOutput output) throws IOException;
+
+	/**
+	 * Reads a value starting at the position of the buffer, leaving the buffer
+	 * positioned after it.
+	 *
+	 * @param input: the buffer the value is read from.
+	 *
+	 * @return the value.
+	 */
+	public T read(ByteBuffer input);
+
+	/**
+	 * Functional counterpart of write(T, DataOutput).
+	 */
+	@FunctionalInterface
+	public interface Writer<T> {
+		public void write(T value, DataOutput output) throws IOException;
+	}
+
+	/**
+	 * Builds a codec out of a writer and a reader.
+	 */
+	public static <T> Codec<T> of(Writer<T> writer, Function<ByteBuffer, T> reader) {
+		return new Codec<T>() {
+
+			public void write(T value, DataOutput output) throws IOException {
+				writer.write(value, output);
+			}
+
+			public T read(ByteBuffer input) {
+				return reader.apply(input);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,116 @@
+package it.aggregationtree.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.Dictionary;
+import it.aggregationtree.Schema;
+import it.aggregationtree.utils.ColumnarWriter.ValueType;
+
+/**
+ * Loads a binary columnar file written by ColumnarWriter, read through memory
+ * mappings. The dictionaries of the file are translated once into the codes of
+ * the tree, looking the label values up without creating a String when they
+ * are already known, so that loading a row only involves reading its codes and
+ * its value.
+ * 
+ * @param <V>: the type of the values, which must match the value type of the
+ *        file: Integer, Long or Double.
+ */
+public class ColumnarLoader<V> {
+
+	/**
+	 * Loads the rows of a columnar file into an aggregation tree. The file must
+	 * contain all the dimensions of the aggregation order of the tree.
+	 * 
+	 * @param columnarInput: the columnar file to be loaded.
+	 * @param tree: the aggregation tree the rows are inserted into.
+	 * 
+	 * @return the report of the load.
+	 */
+	@SuppressWarnings("unchecked")
+	public LoadReport load(File columnarInput, AggregationTree<V, ?> tree) {
+		LoadReport report = new LoadReport();
+		Schema schema = tree.getSchema();
+		try (FileChannel channel = FileChannel.open(columnarInput.toPath(), StandardOpenOption.READ)) {
+			MappedInput header = new MappedInput(channel, 0, channel.size());
+			if (header.getInt() != ColumnarWriter.MAGIC || header.getInt() != ColumnarWriter.VERSION) {
+				throw new RuntimeException("The input file is not a columnar file.");
+			}
+			int dimensions = header.getInt();
+			// position in the tree of each dimension of the file
+			int[] positions = new int[dimensions];
+			int matched = 0;
+			for (int i = 0; i < dimensions; i++) {
+				positions[i] = schema.indexOf(header.getString());
+				if (positions[i] >= 0) {
+					matched = matched + 1;
+				}
+			}
+			if (matched < schema.size()) {
+				throw new IllegalArgumentException("The columnar file misses a dimension of the aggregation order.");
+			}
+			ValueType valueType = ValueType.values()[header.get()];
+			long rows = header.getLong();
+
+			// translation of the codes of the file into the codes of the tree
+			int[][] translations = new int[dimensions][];
+			for (int i = 0; i < dimensions; i++) {
+				int size = header.getInt();
+				translations[i] = new int[size];
+				for (int c = 0; c < size; c++) {
+					int length = header.getInt();
+					ByteBuffer buffer = header.ensure(length);
+					int offset = buffer.position();
+					if (positions[i] >= 0) {
+						Dictionary dictionary = schema.getDictionary(positions[i]);
+						translations[i][c] = dictionary.encode(buffer, offset, length);
+					}
+					buffer.position(offset + length);
+				}
+			}
+
+			long columnsStart = header.position();
+			MappedInput[] columns = new MappedInput[dimensions];
+			for (int i = 0; i < dimensions; i++) {
+				if (positions[i] >= 0) {
+					long start = columnsStart + i * rows * 4;
+					columns[i] = new MappedInput(channel, start, start + rows * 4);
+				}
+			}
+			long valuesStart = columnsStart + dimensions * rows * 4;
+			MappedInput values = new MappedInput(channel, valuesStart, channel.size());
+
+			int[] codes = new int[schema.size()];
+			for (long r = 0; r < rows; r++) {
+				for (int i = 0; i < dimensions; i++) {
+					if (positions[i] >= 0) {
+						codes[positions[i]] = translations[i][columns[i].getInt()];
+					}
+				}
+				Object value;
+				switch (valueType) {
+				case INT:
+					value = values.getInt();
+					break;
+				case LONG:
+					value = values.getLong();
+					break;
+				default:
+					value = values.getDouble();
+				}
+				tree.insertEncoded(codes, (V) value);
+				report.addLoadedRow();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(
+					"Problem loading the input columnar file. Make sure it exists at the provided  path.");
+		}
+		return report;
+	}
+
+}
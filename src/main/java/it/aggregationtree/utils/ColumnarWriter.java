@@ -0,0 +1,165 @@
+package it.aggregationtree.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import it.aggregationtree.Dictionary;
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.Row;
+import it.aggregationtree.Schema;
+
+/**
+ * Writes rows with numeric values to a binary columnar file, which can be
+ * loaded through ColumnarLoader. The rows are buffered as dictionary codes and
+ * primitive values, and the file is written when the writer is closed.
+ * 
+ * The file starts with a header containing the magic number, the format
+ * version, the names of the dimensions, the type of the values, the number of
+ * rows and the dictionary of every dimension. The header is followed by one
+ * column of int codes for each dimension and by the column of the values.
+ */
+public class ColumnarWriter implements Closeable {
+
+	static final int MAGIC = 0x41475443;
+	static final int VERSION = 1;
+
+	/**
+	 * The type of the values stored in a columnar file.
+	 */
+	public enum ValueType {
+		INT, LONG, DOUBLE
+	}
+
+	private final File output;
+	private final ValueType valueType;
+	private final Schema schema;
+	private final int[][] codes;
+	private long[] longValues;
+	private double[] doubleValues;
+	private int size;
+
+	/**
+	 * @param output: the file to be written.
+	 * @param valueType: the type the values are stored as.
+	 * @param dimensions: the names of the dimensions.
+	 */
+	public ColumnarWriter(File output, ValueType valueType, String... dimensions) {
+		this.output = output;
+		this.valueType = valueType;
+		this.schema = new Schema(dimensions);
+		this.codes = new int[dimensions.length][16];
+		if (valueType == ValueType.DOUBLE) {
+			this.doubleValues = new double[16];
+		} else {
+			this.longValues = new long[16];
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Appends a row whose label values follow the order of the dimensions of the
+	 * writer.
+	 * 
+	 * @param row: the row to be appended.
+	 */
+	public void append(PositionalRow<? extends Number> row) {
+		if (row.getValue() == null) {
+			throw new IllegalArgumentException("The appended row does not have a value: " + row);
+		}
+		if (row.getLabelValues().length != this.schema.size() || Arrays.asList(row.getLabelValues()).contains(null)) {
+			throw new IllegalArgumentException("The appended row misses a value for a dimension: " + row);
+		}
+		if (this.valueType == ValueType.INT && row.getValue().longValue() != row.getValue().intValue()) {
+			throw new IllegalArgumentException("The appended row has a value out of the range of an int: " + row);
+		}
+		if (this.size == this.codes[0].length) {
+			this.grow();
+		}
+		for (int i = 0; i < this.schema.size(); i++) {
+			this.codes[i][this.size] = this.schema.getDictionary(i).encode(row.getLabel(i));
+		}
+		if (this.valueType == ValueType.DOUBLE) {
+			this.doubleValues[this.size] = row.getValue().doubleValue();
+		} else {
+			this.longValues[this.size] = row.getValue().longValue();
+		}
+		this.size = this.size + 1;
+	}
+
+	/**
+	 * Appends a row, taking the label values of the dimensions of the writer.
+	 * 
+	 * @param row: the row to be appended.
+	 */
+	public void append(Row<? extends Number> row) {
+		this.append(this.schema.toPositional(row));
+	}
+
+	/**
+	 * Writes the appended rows to the output file.
+	 */
+	public void close() throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(this.output), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(this.schema.size());
+			for (int i = 0; i < this.schema.size(); i++) {
+				writeString(out, this.schema.getDimension(i));
+			}
+			out.writeByte(this.valueType.ordinal());
+			out.writeLong(this.size);
+			for (int i = 0; i < this.schema.size(); i++) {
+				Dictionary dictionary = this.schema.getDictionary(i);
+				out.writeInt(dictionary.size());
+				for (int c = 0; c < dictionary.size(); c++) {
+					writeString(out, dictionary.decode(c));
+				}
+			}
+			for (int i = 0; i < this.schema.size(); i++) {
+				for (int r = 0; r < this.size; r++) {
+					out.writeInt(this.codes[i][r]);
+				}
+			}
+			for (int r = 0; r < this.size; r++) {
+				switch (this.valueType) {
+				case INT:
+					out.writeInt(Math.toIntExact(this.longValues[r]));
+					break;
+				case LONG:
+					out.writeLong(this.longValues[r]);
+					break;
+				default:
+					out.writeDouble(this.doubleValues[r]);
+				}
+			}
+		}
+	}
+
+	// private methods
+
+	private void grow() {
+		int capacity = this.size * 2;
+		for (int i = 0; i < this.codes.length; i++) {
+			this.codes[i] = Arrays.copyOf(this.codes[i], capacity);
+		}
+		if (this.valueType == ValueType.DOUBLE) {
+			this.doubleValues = Arrays.copyOf(this.doubleValues, capacity);
+		} else {
+			this.longValues = Arrays.copyOf(this.longValues, capacity);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+}
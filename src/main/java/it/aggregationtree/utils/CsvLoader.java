@@ -0,0 +1,349 @@
+package it.aggregationtree.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.Dictionary;
+import it.aggregationtree.Row;
+import it.aggregationtree.Schema;
+import it.aggregationtree.exceptions.RecordParseException;
+
+/**
+ * Loads rows from a CSV file, read through a memory mapping. The first line of
+ * the file must contain the names of the columns. Fields can be enclosed in
+ * double quotes, in which case a double quote is escaped by another double
+ * quote. When loading into an AggregationTree, the columns are matched by name
+ * against the dimensions of the tree and label values already in the
+ * dictionaries of the tree are looked up without creating a String.
+ * 
+ * @param <V>: the type of the values.
+ */
+public class CsvLoader<V> {
+
+	private final String valueColumn;
+	private final ValueParser<V> valueParser;
+	private final byte delimiter;
+
+	/**
+	 * @param valueColumn: the name of the column containing the values.
+	 * @param valueParser: the parser of the values.
+	 */
+	public CsvLoader(String valueColumn, ValueParser<V> valueParser) {
+		this(valueColumn, valueParser, ',');
+	}
+
+	/**
+	 * @param valueColumn: the name of the column containing the values.
+	 * @param valueParser: the parser of the values.
+	 * @param delimiter: the ASCII character separating the fields.
+	 */
+	public CsvLoader(String valueColumn, ValueParser<V> valueParser, char delimiter) {
+		if (delimiter > 127 || delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+			throw new IllegalArgumentException("Invalid delimiter: " + delimiter);
+		}
+		this.valueColumn = valueColumn;
+		this.valueParser = valueParser;
+		this.delimiter = (byte) delimiter;
+	}
+
+	/**
+	 * Loads the rows of a CSV file into an aggregation tree. Rows that cannot be
+	 * parsed or inserted are reported and skipped.
+	 * 
+	 * @param csvInput: the CSV file to be loaded.
+	 * @param tree: the aggregation tree the rows are inserted into.
+	 * 
+	 * @return the report of the load.
+	 */
+	public LoadReport load(File csvInput, AggregationTree<V, ?> tree) {
+		Schema schema = tree.getSchema();
+		int[] codes = new int[schema.size()];
+		return this.read(csvInput, new LineSink() {
+
+			private int[] positions;
+			private int valuePosition;
+
+			public void header(String[] columns) {
+				this.positions = new int[columns.length];
+				this.valuePosition = -1;
+				int matched = 0;
+				for (int i = 0; i < columns.length; i++) {
+					this.positions[i] = schema.indexOf(columns[i]);
+					if (this.positions[i] >= 0) {
+						matched = matched + 1;
+					}
+					if (columns[i].equals(CsvLoader.this.valueColumn)) {
+						this.valuePosition = i;
+					}
+				}
+				if (this.valuePosition < 0 || matched < schema.size()) {
+					throw new IllegalArgumentException("The CSV file misses a column of the aggregation order.");
+				}
+			}
+
+			public void line(Fields fields) {
+				// the value is parsed first, so that the labels of a rejected line are
+				// not added to the dictionaries
+				V value = fields.parse(this.valuePosition, CsvLoader.this.valueParser);
+				for (int i = 0; i < fields.count; i++) {
+					if (this.positions[i] >= 0) {
+						Dictionary dictionary = schema.getDictionary(this.positions[i]);
+						codes[this.positions[i]] = fields.escaped[i]
+								? dictionary.encode(fields.unescape(i))
+								: dictionary.encode(fields.buffer, fields.start[i], fields.length[i]);
+					}
+				}
+				tree.insertEncoded(codes, value);
+			}
+		});
+	}
+
+	/**
+	 * Loads the rows of a CSV file, passing them to a consumer. Every column other
+	 * than the value column becomes a label of the row.
+	 * 
+	 * @param csvInput: the CSV file to be loaded.
+	 * @param consumer: the consumer of the rows.
+	 * 
+	 * @return the report of the load.
+	 */
+	public LoadReport load(File csvInput, Consumer<Row<V>> consumer) {
+		return this.read(csvInput, new LineSink() {
+
+			private String[] columns;
+			private int valuePosition;
+
+			public void header(String[] columns) {
+				this.columns = columns;
+				this.valuePosition = -1;
+				for (int i = 0; i < columns.length; i++) {
+					if (columns[i].equals(CsvLoader.this.valueColumn)) {
+						this.valuePosition = i;
+					}
+				}
+				if (this.valuePosition < 0) {
+					throw new IllegalArgumentException("The CSV file misses the value column.");
+				}
+			}
+
+			public void line(Fields fields) {
+				Row<V> row = new Row<V>();
+				for (int i = 0; i < fields.count; i++) {
+					if (i != this.valuePosition) {
+						row.addLabel(this.columns[i], fields.unescape(i));
+					}
+				}
+				row.setValue(fields.parse(this.valuePosition, CsvLoader.this.valueParser));
+				consumer.accept(row);
+			}
+		});
+	}
+
+	// private methods
+
+	private LoadReport read(File csvInput, LineSink sink) {
+		LoadReport report = new LoadReport();
+		try (FileChannel channel = FileChannel.open(csvInput.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long lineStart = 0;
+			long lineNumber = 1;
+			long record = 0;
+			Fields fields = null;
+			while (lineStart < size) {
+				long windowSize = Math.min(MappedInput.WINDOW_SIZE, size - lineStart);
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, lineStart, windowSize);
+				boolean lastWindow = lineStart + windowSize == size;
+				int position = 0;
+				while (position < windowSize) {
+					if (fields == null) {
+						// the header defines the number of fields of every line
+						fields = new Fields(window, this.countFields(window, position, (int) windowSize));
+					}
+					fields.buffer = window;
+					int next = this.split(window, position, (int) windowSize, lastWindow, fields);
+					if (next < 0) {
+						break;
+					}
+					if (lineNumber == 1) {
+						String[] columns = new String[fields.count];
+						for (int i = 0; i < fields.count; i++) {
+							columns[i] = fields.unescape(i);
+						}
+						sink.header(columns);
+					} else if (fields.count > 0 || fields.malformed) {
+						try {
+							if (fields.malformed) {
+								throw new IllegalArgumentException("Malformed line.");
+							} else if (fields.count != fields.start.length) {
+								throw new IllegalArgumentException("Expected " + fields.start.length + " fields.");
+							}
+							sink.line(fields);
+							report.addLoadedRow();
+						} catch (IllegalArgumentException e) {
+							report.addError(new RecordParseException(e.getMessage(), record, lineStart + position,
+									(int) lineNumber, -1));
+						}
+						record = record + 1;
+					}
+					position = next;
+					lineNumber = lineNumber + 1;
+				}
+				if (position == 0 && !lastWindow) {
+					throw new RuntimeException("Line " + lineNumber + " exceeds the size of a mapped window.");
+				}
+				lineStart = lineStart + position;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem loading the input csv file. Make sure it exists at the provided  path.",
+					e);
+		}
+		return report;
+	}
+
+	private int countFields(ByteBuffer buffer, int from, int limit) {
+		int count = 1;
+		boolean quoted = false;
+		for (int i = from; i < limit; i++) {
+			byte b = buffer.get(i);
+			if (b == '"') {
+				quoted = !quoted;
+			} else if (!quoted && b == this.delimiter) {
+				count = count + 1;
+			} else if (!quoted && b == '\n') {
+				break;
+			}
+		}
+		return count;
+	}
+
+	// splits the line starting at from into fields, returning the start of the
+	// next line, or -1 if the line does not end within the limit and the file
+	// continues after it
+	private int split(ByteBuffer buffer, int from, int limit, boolean last, Fields fields) {
+		fields.clear();
+		int lineEnd = -1;
+		boolean quoted = false;
+		for (int i = from; i < limit && lineEnd < 0; i++) {
+			byte b = buffer.get(i);
+			if (b == '"') {
+				quoted = !quoted;
+			} else if (b == '\n' && !quoted) {
+				lineEnd = i;
+			}
+		}
+		if (lineEnd < 0) {
+			if (!last) {
+				return -1;
+			}
+			lineEnd = limit;
+		}
+		int next = lineEnd < limit ? lineEnd + 1 : limit;
+		int end = lineEnd > from && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+		if (end == from) {
+			// empty line
+			return next;
+		}
+
+		int i = from;
+		while (true) {
+			if (buffer.get(i) == '"') {
+				// quoted field, the quotes are excluded from the field
+				int start = i + 1;
+				boolean escaped = false;
+				int j = start;
+				while (j < end && (buffer.get(j) != '"' || (j + 1 < end && buffer.get(j + 1) == '"'))) {
+					if (buffer.get(j) == '"') {
+						escaped = true;
+						j = j + 1;
+					}
+					j = j + 1;
+				}
+				if (j >= end || (j + 1 < end && buffer.get(j + 1) != this.delimiter)) {
+					// unterminated quote or characters after the closing quote
+					fields.malformed = true;
+					return next;
+				}
+				fields.add(start, j - start, escaped);
+				i = j + 1;
+			} else {
+				int start = i;
+				while (i < end && buffer.get(i) != this.delimiter) {
+					i = i + 1;
+				}
+				fields.add(start, i - start, false);
+			}
+			if (i >= end) {
+				return next;
+			}
+			// skip the delimiter, a trailing one ends with an empty field
+			i = i + 1;
+			if (i == end) {
+				fields.add(i, 0, false);
+				return next;
+			}
+		}
+	}
+
+	// receives the lines of the file
+	private interface LineSink {
+
+		public void header(String[] columns);
+
+		public void line(Fields fields);
+	}
+
+	// positions of the fields of the current line within the mapped window
+	private static class Fields {
+
+		private ByteBuffer buffer;
+		private final int[] start;
+		private final int[] length;
+		private final boolean[] escaped;
+		private int count;
+		private boolean malformed;
+
+		public Fields(ByteBuffer buffer, int size) {
+			this.buffer = buffer;
+			this.start = new int[size];
+			this.length = new int[size];
+			this.escaped = new boolean[size];
+		}
+
+		public void clear() {
+			this.count = 0;
+			this.malformed = false;
+		}
+
+		// fields exceeding the expected number are counted but not stored
+		public void add(int start, int length, boolean escaped) {
+			if (this.count < this.start.length) {
+				this.start[this.count] = start;
+				this.length[this.count] = length;
+				this.escaped[this.count] = escaped;
+			}
+			this.count = this.count + 1;
+		}
+
+		public String unescape(int field) {
+			String value = ValueParser.toString(this.buffer, this.start[field], this.length[field]);
+			return this.escaped[field] ? value.replace("\"\"", "\"") : value;
+		}
+
+		public <V> V parse(int field, ValueParser<V> parser) {
+			if (this.escaped[field]) {
+				byte[] bytes = this.unescape(field).getBytes(StandardCharsets.UTF_8);
+				return parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length);
+			} else {
+				return parser.parse(this.buffer, this.start[field], this.length[field]);
+			}
+		}
+	}
+
+}
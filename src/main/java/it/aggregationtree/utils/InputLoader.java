@@ -2,24 +2,58 @@ package it.aggregationtree.utils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonLocation;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.PositionalRow;
 import it.aggregationtree.Row;
+import it.aggregationtree.Schema;
+import it.aggregationtree.exceptions.RecordParseException;
 
 public class InputLoader<V> {
 
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final Class<V> valueType;
+
+	// constructors
+
+	/**
+	 * Creates a loader that does not check the values of the streamed records.
+	 */
+	public InputLoader() {
+		this(null);
+	}
+
+	/**
+	 * Creates a loader that checks the values of the streamed records. Integer
+	 * values are widened to Long or Double values when these are expected, while
+	 * any other value that is not an instance of the value type is reported as an
+	 * invalid record before it reaches the tree or the consumer.
+	 * 
+	 * @param valueType: the type of the values, or null to leave them unchecked.
+	 */
+	public InputLoader(Class<V> valueType) {
+		this.valueType = valueType;
+	}
+
+	// public methods
+
 	/**
 	 * Loads a dataset or rows from an external JSON file.
 	 * 
 	 * @param jsonInput: the JSON file to be loaded.
 	 */
 	public List<Row<V>> loadFromJson(File jsonInput){
-		ObjectMapper mapper = new ObjectMapper();
 		try {
 			return mapper.readValue(jsonInput, new TypeReference<List<Row<V>>>(){});
 			
@@ -32,4 +66,229 @@ public class InputLoader<V> {
 		}
 	}
 
+	/**
+	 * Streams the rows of an external JSON file into an aggregation tree. Rows are
+	 * inserted while the file is parsed, so the file is never materialized in
+	 * memory. The same row buffer is reused for all the records. Records that
+	 * cannot be parsed or inserted are reported and skipped, while a malformed
+	 * JSON structure stops the load and is reported as the last error. Values are
+	 * only checked if the loader has a value type: an unchecked value of another
+	 * type may fail inside the aggregation, after the tree has been changed.
+	 * 
+	 * @param jsonInput: the JSON file to be loaded, containing an array of rows.
+	 * @param tree: the aggregation tree the rows are inserted into.
+	 * 
+	 * @return the report of the load.
+	 */
+	public LoadReport loadFromJson(File jsonInput, AggregationTree<V, ?> tree) {
+		return this.stream(jsonInput, new TreeSink(tree));
+	}
+
+	/**
+	 * Streams the rows of an external JSON file to a consumer. Each record is
+	 * parsed into a new row and passed to the consumer before the next record is
+	 * read. Records that cannot be parsed or consumed are reported and skipped,
+	 * while a malformed JSON structure stops the load and is reported as the last
+	 * error. Values are only checked if the loader has a value type.
+	 * 
+	 * @param jsonInput: the JSON file to be loaded, containing an array of rows.
+	 * @param consumer: the consumer of the rows.
+	 * 
+	 * @return the report of the load.
+	 */
+	public LoadReport loadFromJson(File jsonInput, Consumer<Row<V>> consumer) {
+		return this.stream(jsonInput, new ConsumerSink(consumer));
+	}
+
+	// private methods
+
+	private LoadReport stream(File jsonInput, RecordSink sink) {
+		LoadReport report = new LoadReport();
+		long record = 0;
+		try (JsonParser parser = mapper.getFactory().createParser(jsonInput)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new RuntimeException("Error parsing the input json file.");
+			}
+			try {
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					JsonLocation start = parser.getTokenLocation();
+					String error = this.readRecord(parser, sink);
+					if (error == null) {
+						try {
+							sink.end();
+							report.addLoadedRow();
+						} catch (IllegalArgumentException e) {
+							error = e.getMessage();
+						}
+					}
+					if (error != null) {
+						report.addError(this.toError(error, record, start));
+					}
+					record = record + 1;
+				}
+			} catch (JsonParseException e) {
+				report.addError(this.toError(e.getOriginalMessage(), record, e.getLocation()));
+			}
+		} catch (JsonParseException e) {
+			throw new RuntimeException("Error parsing the input json file.");
+		} catch (IOException e) {
+			throw new RuntimeException("Problem loading the input json file. Make sure it exists at the provided  path.");
+		}
+		return report;
+	}
+
+	// reads a record up to its end, returning the reason why it is invalid, if any
+	private String readRecord(JsonParser parser, RecordSink sink) throws IOException {
+		if (parser.currentToken() != JsonToken.START_OBJECT) {
+			parser.skipChildren();
+			return "The record is not an object.";
+		}
+		sink.begin();
+		String error = null;
+		Boolean hasValue = false;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if ("value".equals(field)) {
+				Object value = this.readValue(parser, token);
+				if (value == null) {
+					error = "The record does not have a value.";
+				} else if ((value = this.toValueType(value)) == null) {
+					error = "The value of the record has an unexpected type.";
+				} else {
+					sink.value(value);
+					hasValue = true;
+				}
+			} else if ("labels".equals(field) && token == JsonToken.START_OBJECT) {
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String label = parser.getCurrentName();
+					if (parser.nextToken() == JsonToken.VALUE_STRING) {
+						sink.label(label, parser.getText());
+					} else {
+						parser.skipChildren();
+						error = "The label " + label + " is not a string.";
+					}
+				}
+			} else {
+				parser.skipChildren();
+				error = "Unexpected field " + field + ".";
+			}
+		}
+		if (error == null && !hasValue) {
+			error = "The record does not have a value.";
+		}
+		return error;
+	}
+
+	private Object readValue(JsonParser parser, JsonToken token) throws IOException {
+		switch (token) {
+		case VALUE_NUMBER_INT:
+			return parser.getNumberValue();
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_STRING:
+			return parser.getText();
+		case VALUE_TRUE:
+		case VALUE_FALSE:
+			return parser.getBooleanValue();
+		case VALUE_NULL:
+			return null;
+		default:
+			return parser.readValueAs(Object.class);
+		}
+	}
+
+	// the value converted to the value type, or null if it does not have that type
+	private Object toValueType(Object value) {
+		if (this.valueType == null || this.valueType.isInstance(value)) {
+			return value;
+		}
+		boolean integral = value instanceof Integer || value instanceof Long;
+		if (this.valueType == Long.class && value instanceof Integer) {
+			return ((Integer) value).longValue();
+		} else if (this.valueType == Double.class && integral) {
+			return ((Number) value).doubleValue();
+		}
+		return null;
+	}
+
+	private RecordParseException toError(String reason, long record, JsonLocation location) {
+		long offset = location.getByteOffset() >= 0 ? location.getByteOffset() : location.getCharOffset();
+		return new RecordParseException(reason, record, offset, location.getLineNr(), location.getColumnNr());
+	}
+
+	// receives the content of the records while they are parsed
+	private interface RecordSink {
+
+		public void begin();
+
+		public void label(String label, String value);
+
+		public void value(Object value);
+
+		public void end();
+	}
+
+	private class ConsumerSink implements RecordSink {
+
+		private final Consumer<Row<V>> consumer;
+		private Row<V> row;
+
+		public ConsumerSink(Consumer<Row<V>> consumer) {
+			this.consumer = consumer;
+		}
+
+		public void begin() {
+			this.row = new Row<V>();
+		}
+
+		public void label(String label, String value) {
+			this.row.addLabel(label, value);
+		}
+
+		@SuppressWarnings("unchecked")
+		public void value(Object value) {
+			this.row.setValue((V) value);
+		}
+
+		public void end() {
+			this.consumer.accept(this.row);
+		}
+	}
+
+	// fills a single positional row following the schema of the tree
+	private class TreeSink implements RecordSink {
+
+		private final AggregationTree<V, ?> tree;
+		private final Schema schema;
+		private final PositionalRow<V> row;
+
+		public TreeSink(AggregationTree<V, ?> tree) {
+			this.tree = tree;
+			this.schema = tree.getSchema();
+			this.row = new PositionalRow<V>(new String[this.schema.size()], null);
+		}
+
+		public void begin() {
+			Arrays.fill(this.row.getLabelValues(), null);
+			this.row.setValue(null);
+		}
+
+		public void label(String label, String value) {
+			int position = this.schema.indexOf(label);
+			if (position >= 0) {
+				this.row.getLabelValues()[position] = value;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		public void value(Object value) {
+			this.row.setValue((V) value);
+		}
+
+		public void end() {
+			this.tree.insert(this.row);
+		}
+	}
+
 }
@@ -0,0 +1,197 @@
+package it.aggregationtree.utils;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from int keys to non-null values, using open addressing so that
+ * neither keys nor entries are boxed.
+ * 
+ * @param <T>: the type of the values.
+ */
+public class IntMap<T> {
+
+	private static final int INITIAL_CAPACITY = 4;
+
+	private int[] keys;
+	private Object[] values;
+	private int size;
+
+	public IntMap() {
+		this.keys = new int[INITIAL_CAPACITY];
+		this.values = new Object[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	/**
+	 * Creates a copy of a map. The values are not copied.
+	 * 
+	 * @param other: the map to be copied.
+	 */
+	public IntMap(IntMap<T> other) {
+		this.keys = other.keys.clone();
+		this.values = other.values.clone();
+		this.size = other.size;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the value associated to the key, or null if the key is absent.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int key) {
+		int mask = this.keys.length - 1;
+		for (int i = hash(key) & mask; this.values[i] != null; i = (i + 1) & mask) {
+			if (this.keys[i] == key) {
+				return (T) this.values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Associates a value to a key, replacing the previous value if any.
+	 * 
+	 * @return the previous value, or null if the key was absent.
+	 */
+	@SuppressWarnings("unchecked")
+	public T put(int key, T value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Null values are not allowed.");
+		}
+		int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		for (; this.values[i] != null; i = (i + 1) & mask) {
+			if (this.keys[i] == key) {
+				T previous = (T) this.values[i];
+				this.values[i] = value;
+				return previous;
+			}
+		}
+		this.keys[i] = key;
+		this.values[i] = value;
+		this.size = this.size + 1;
+		// the load factor is kept below 0.5
+		if (this.size * 2 > this.keys.length) {
+			this.resize(this.keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the value associated to a key.
+	 * 
+	 * @return the removed value, or null if the key was absent.
+	 */
+	@SuppressWarnings("unchecked")
+	public T remove(int key) {
+		int mask = this.keys.length - 1;
+		int i = hash(key) & mask;
+		while (this.values[i] != null && this.keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (this.values[i] == null) {
+			return null;
+		}
+		T removed = (T) this.values[i];
+		// the following entries of the cluster are shifted back, so that no entry
+		// is left past an empty slot preceding its home slot
+		int j = i;
+		while (true) {
+			j = (j + 1) & mask;
+			if (this.values[j] == null) {
+				break;
+			}
+			int home = hash(this.keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				this.keys[i] = this.keys[j];
+				this.values[i] = this.values[j];
+				i = j;
+			}
+		}
+		this.values[i] = null;
+		this.size = this.size - 1;
+		return removed;
+	}
+
+	/**
+	 * @return a view of the values of the map.
+	 */
+	public Collection<T> values() {
+		return new AbstractCollection<T>() {
+
+			@Override
+			public Iterator<T> iterator() {
+				return new ValueIterator();
+			}
+
+			@Override
+			public int size() {
+				return IntMap.this.size;
+			}
+		};
+	}
+
+	private void resize(int capacity) {
+		int[] oldKeys = this.keys;
+		Object[] oldValues = this.values;
+		this.keys = new int[capacity];
+		this.values = new Object[capacity];
+		int mask = capacity - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldValues[j] != null) {
+				int i = hash(oldKeys[j]) & mask;
+				while (this.values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				this.keys[i] = oldKeys[j];
+				this.values[i] = oldValues[j];
+			}
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private class ValueIterator implements Iterator<T> {
+
+		private int next;
+
+		public ValueIterator() {
+			this.next = this.seek(0);
+		}
+
+		public boolean hasNext() {
+			return this.next < IntMap.this.values.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T value = (T) IntMap.this.values[this.next];
+			this.next = this.seek(this.next + 1);
+			return value;
+		}
+
+		private int seek(int from) {
+			int i = from;
+			while (i < IntMap.this.values.length && IntMap.this.values[i] == null) {
+				i = i + 1;
+			}
+			return i;
+		}
+	}
+}
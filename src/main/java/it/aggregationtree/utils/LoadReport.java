@@ -0,0 +1,46 @@
+package it.aggregationtree.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.aggregationtree.exceptions.RecordParseException;
+
+/**
+ * The outcome of a streaming load: the number of loaded rows and the records
+ * that could not be loaded.
+ */
+public class LoadReport {
+
+	private long loadedRows;
+	private final List<RecordParseException> errors;
+
+	public LoadReport() {
+		this.loadedRows = 0;
+		this.errors = new ArrayList<RecordParseException>();
+	}
+
+	public long getLoadedRows() {
+		return loadedRows;
+	}
+
+	public List<RecordParseException> getErrors() {
+		return errors;
+	}
+
+	public Boolean hasErrors() {
+		return !this.errors.isEmpty();
+	}
+
+	void addLoadedRow() {
+		this.loadedRows = this.loadedRows + 1;
+	}
+
+	void addError(RecordParseException error) {
+		this.errors.add(error);
+	}
+
+	@Override
+	public String toString() {
+		return "loaded rows=" + this.loadedRows + ", errors=" + this.errors.size();
+	}
+}
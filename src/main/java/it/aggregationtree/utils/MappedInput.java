@@ -0,0 +1,80 @@
+package it.aggregationtree.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequential reader over a region of a file, mapped in memory one window at a
+ * time so that files larger than 2GB can be read.
+ */
+public class MappedInput {
+
+	public static final long WINDOW_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	private final long end;
+	private long windowStart;
+	private MappedByteBuffer window;
+
+	public MappedInput(FileChannel channel, long position, long end) throws IOException {
+		this.channel = channel;
+		this.end = end;
+		this.map(position);
+	}
+
+	public long position() {
+		return this.windowStart + this.window.position();
+	}
+
+	public byte get() throws IOException {
+		return this.ensure(1).get();
+	}
+
+	public int getInt() throws IOException {
+		return this.ensure(4).getInt();
+	}
+
+	public long getLong() throws IOException {
+		return this.ensure(8).getLong();
+	}
+
+	public double getDouble() throws IOException {
+		return this.ensure(8).getDouble();
+	}
+
+	public String getString() throws IOException {
+		int length = this.getInt();
+		ByteBuffer buffer = this.ensure(length);
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Makes the next bytes available in a single buffer, positioned on the first
+	 * of them.
+	 * 
+	 * @param length: the number of bytes.
+	 * 
+	 * @return the buffer containing the bytes.
+	 */
+	public ByteBuffer ensure(int length) throws IOException {
+		if (this.window.remaining() < length) {
+			long position = this.position();
+			if (position + length > this.end) {
+				throw new IOException("Unexpected end of file at offset " + position + ".");
+			}
+			this.map(position);
+		}
+		return this.window;
+	}
+
+	private void map(long position) throws IOException {
+		long size = Math.min(WINDOW_SIZE, this.end - position);
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		this.windowStart = position;
+	}
+}
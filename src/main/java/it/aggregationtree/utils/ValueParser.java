@@ -0,0 +1,79 @@
+package it.aggregationtree.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a value out of its textual representation within a buffer.
+ * 
+ * @param <V>: the type of the parsed values.
+ */
+@FunctionalInterface
+public interface ValueParser<V> {
+
+	public static final ValueParser<Integer> INTEGER = (b, o, l) -> {
+		long value = parseLong(b, o, l);
+		if (value != (int) value) {
+			throw new IllegalArgumentException("Value out of the range of an int: " + toString(b, o, l));
+		}
+		return (int) value;
+	};
+
+	public static final ValueParser<Long> LONG = ValueParser::parseLong;
+
+	public static final ValueParser<Double> DOUBLE = (b, o, l) -> Double.parseDouble(toString(b, o, l));
+
+	public static final ValueParser<String> STRING = ValueParser::toString;
+
+	/**
+	 * @param buffer: the buffer containing the value.
+	 * @param offset: the absolute position of the value in the buffer.
+	 * @param length: the length of the value in bytes.
+	 * 
+	 * @return the parsed value.
+	 * 
+	 * @throws IllegalArgumentException if the bytes are not a valid value.
+	 */
+	public V parse(ByteBuffer buffer, int offset, int length);
+
+	/**
+	 * Parses a decimal integer straight from its ASCII digits. Values out of the
+	 * range of a long are rejected.
+	 */
+	public static long parseLong(ByteBuffer buffer, int offset, int length) {
+		if (length == 0) {
+			throw new IllegalArgumentException("Empty value.");
+		}
+		int i = 0;
+		boolean negative = buffer.get(offset) == '-';
+		if (negative || buffer.get(offset) == '+') {
+			i = 1;
+			if (length == 1) {
+				throw new IllegalArgumentException("Invalid value: " + toString(buffer, offset, length));
+			}
+		}
+		// accumulated negatively, since the range of a long reaches one further
+		// below zero than above
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; i < length; i++) {
+			int digit = buffer.get(offset + i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Invalid value: " + toString(buffer, offset, length));
+			}
+			if (result < limit / 10 || result * 10 < limit + digit) {
+				throw new IllegalArgumentException("Value out of the range of a long: " + toString(buffer, offset, length));
+			}
+			result = result * 10 - digit;
+		}
+		return negative ? result : -result;
+	}
+
+	public static String toString(ByteBuffer buffer, int offset, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,526 @@
+package it.aggregationtree.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.Schema;
+import it.aggregationtree.exceptions.RecordParseException;
+
+/**
+ * Durable append-only log of the rows inserted into and deleted from an
+ * aggregation tree. Once attached to a tree through
+ * AggregationTree.setWriteAheadLog, every row accepted by the tree is appended
+ * to the log before the tree is modified.
+ *
+ * The log is kept in a directory holding numbered segments of appended rows and
+ * base files, which are trees saved by compact(). On startup, the tree is opened
+ * from the latest base file, if any, and the segments written since are
+ * replayed into it through replay().
+ *
+ * Appended rows are buffered in memory and written with a single write and
+ * fsync every flush interval, so that the cost of a sync is shared by all the
+ * rows appended in the meantime. A flush interval of 0 syncs every row before
+ * returning, while rows appended within the last flush interval can be lost on
+ * a crash otherwise. The buffered rows are swapped for an empty buffer before
+ * they are written, so that rows can be appended while the segment is written
+ * and synced. Once a write fails, whether in the background or not, every later
+ * append and sync fails with it.
+ *
+ * @param <V>: the type of the values.
+ */
+public class WriteAheadLog<V> implements Closeable {
+
+	static final int MAGIC = 0x4147574C;
+	static final int VERSION = 2;
+	// kinds of the records
+	private static final byte INSERT = 0;
+	private static final byte DELETE = 1;
+	// appended rows are written without sync once the buffer exceeds this size
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String BASE_PREFIX = "base-";
+	private static final String BASE_SUFFIX = ".tree";
+
+	private final File directory;
+	private final Codec<V> valueCodec;
+	private final String[] dimensions;
+	private final ScheduledExecutorService flusher;
+	private final Buffer record;
+	private final DataOutputStream recordOutput;
+	// the buffer of the appended rows, and the one being written to the segment
+	private Buffer pending;
+	private DataOutputStream pendingOutput;
+	private Buffer written;
+	private DataOutputStream writtenOutput;
+	// held while the segment is written and synced, before the lock of the log
+	private final Object writeLock;
+	private final CRC32 crc;
+	private long generation;
+	private FileChannel segment;
+	private boolean closed;
+	// the first failure writing the log, after which it cannot be written anymore
+	private IOException failure;
+
+	/**
+	 * Opens the log stored in a directory, creating the directory if needed. The
+	 * rows appended from now on are written to a new segment.
+	 *
+	 * @param directory: the directory of the log.
+	 * @param valueCodec: the codec writing and reading the values.
+	 * @param flushIntervalMillis: the interval between syncs of the appended rows,
+	 *        or 0 to sync each row when it is appended.
+	 * @param dimensions: the dimensions of the rows, in the aggregation order of
+	 *        the tree.
+	 */
+	public WriteAheadLog(File directory, Codec<V> valueCodec, long flushIntervalMillis, String... dimensions) {
+		if (flushIntervalMillis < 0) {
+			throw new IllegalArgumentException("The flush interval cannot be negative.");
+		}
+		this.directory = directory;
+		this.valueCodec = valueCodec;
+		this.dimensions = dimensions.clone();
+		this.record = new Buffer();
+		this.recordOutput = new DataOutputStream(this.record);
+		this.pending = new Buffer();
+		this.pendingOutput = new DataOutputStream(this.pending);
+		this.written = new Buffer();
+		this.writtenOutput = new DataOutputStream(this.written);
+		this.writeLock = new Object();
+		this.crc = new CRC32();
+		this.closed = false;
+		try {
+			Files.createDirectories(directory.toPath());
+			List<Long> generations = this.generations(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+			generations.addAll(this.generations(BASE_PREFIX, BASE_SUFFIX));
+			long latest = 0;
+			for (long g : generations) {
+				latest = Math.max(latest, g);
+			}
+			this.openSegment(latest + 1);
+		} catch (IOException e) {
+			throw new RuntimeException("Problem opening the write-ahead log at the provided path.", e);
+		}
+		if (flushIntervalMillis > 0) {
+			this.flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+				Thread thread = new Thread(r, "write-ahead-log-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			this.flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		} else {
+			this.flusher = null;
+		}
+	}
+
+	/**
+	 * @return the latest base file of the log, from which the tree is to be opened
+	 *         before replaying the log, or null if the log has never been
+	 *         compacted.
+	 */
+	public File getBase() {
+		long base = this.latestBase();
+		return base == 0 ? null : this.file(BASE_PREFIX, base, BASE_SUFFIX);
+	}
+
+	/**
+	 * Appends a row to the log. The row is durable once the log is synced.
+	 *
+	 * @param labelValues: the label values of the row, in the order of the
+	 *        dimensions of the log.
+	 * @param value: the value of the row.
+	 */
+	public void append(String[] labelValues, V value) {
+		this.append(INSERT, labelValues, value);
+	}
+
+	/**
+	 * Appends the deletion of a row to the log. The deletion is durable once the
+	 * log is synced.
+	 *
+	 * @param labelValues: the label values of the row, in the order of the
+	 *        dimensions of the log.
+	 * @param value: the value of the row.
+	 */
+	public void delete(String[] labelValues, V value) {
+		this.append(DELETE, labelValues, value);
+	}
+
+	/**
+	 * Writes the buffered rows to the current segment and syncs it.
+	 */
+	public void sync() {
+		this.writePending(true);
+	}
+
+	/**
+	 * Replays the rows of the segments written since the latest base file into a
+	 * tree, which must not be writing to this log. A segment whose last record was
+	 * not completely written, as after a crash, is replayed up to that record,
+	 * which is reported as an error. The deletions of rows missing from the tree
+	 * are reported as errors too.
+	 *
+	 * @param tree: the tree the rows are inserted into, or deleted from.
+	 *
+	 * @return the report of the replay.
+	 */
+	public LoadReport replay(AggregationTree<V, ?> tree) {
+		if (tree.getWriteAheadLog() == this) {
+			throw new IllegalStateException("The log cannot be replayed into a tree writing to it.");
+		}
+		Schema schema = tree.getSchema();
+		if (schema.size() != this.dimensions.length) {
+			throw new IllegalArgumentException("The log does not match the aggregation order of the tree.");
+		}
+		for (int i = 0; i < this.dimensions.length; i++) {
+			if (!this.dimensions[i].equals(schema.getDimension(i))) {
+				throw new IllegalArgumentException("The log does not match the aggregation order of the tree.");
+			}
+		}
+		LoadReport report = new LoadReport();
+		try {
+			for (long g : this.generations(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+				if (g >= this.latestBase() && g < this.generation) {
+					this.replaySegment(this.file(SEGMENT_PREFIX, g, SEGMENT_SUFFIX), tree, report);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem reading the write-ahead log.", e);
+		}
+		return report;
+	}
+
+	/**
+	 * Compacts the log into a new base file holding the tree, and deletes the
+	 * segments and base files made obsolete by it. The tree must be the one
+	 * writing to this log, and this method must be called by the thread inserting
+	 * into the tree. The segment is switched and a snapshot of the tree is taken
+	 * at once, so that inserts can go on while the snapshot is being saved.
+	 *
+	 * @param tree: the tree writing to this log.
+	 * @param partialCodec: the codec writing the partial states of the aggregator
+	 *        of the tree, or null to leave them out of the base file.
+	 */
+	public void compact(AggregationTree<V, ?> tree, Codec<?> partialCodec) {
+		if (tree.getWriteAheadLog() != this) {
+			throw new IllegalStateException("Only the tree writing to the log can be compacted into it.");
+		}
+		long base;
+		AggregationTree<V, ?> snapshot;
+		synchronized (this.writeLock) {
+			synchronized (this) {
+				this.verifyOpen();
+				this.verifyWritten();
+				try {
+					this.write(true);
+					this.segment.close();
+					base = this.generation + 1;
+					this.openSegment(base);
+				} catch (IOException e) {
+					throw new RuntimeException("Problem writing the write-ahead log.", e);
+				}
+				snapshot = tree.snapshot();
+			}
+		}
+		try {
+			// the base file only replaces the obsolete segments once it is complete
+			File temporary = this.file(BASE_PREFIX, base, BASE_SUFFIX + ".tmp");
+			snapshot.save(temporary, this.valueCodec, partialCodec);
+			try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			Files.move(temporary.toPath(), this.file(BASE_PREFIX, base, BASE_SUFFIX).toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+			for (long g : this.generations(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+				if (g < base) {
+					Files.delete(this.file(SEGMENT_PREFIX, g, SEGMENT_SUFFIX).toPath());
+				}
+			}
+			for (long g : this.generations(BASE_PREFIX, BASE_SUFFIX)) {
+				if (g < base) {
+					Files.delete(this.file(BASE_PREFIX, g, BASE_SUFFIX).toPath());
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem compacting the write-ahead log.", e);
+		}
+	}
+
+	/**
+	 * Syncs the buffered rows and closes the log.
+	 */
+	public void close() throws IOException {
+		synchronized (this.writeLock) {
+			synchronized (this) {
+				if (!this.closed) {
+					if (this.flusher != null) {
+						this.flusher.shutdown();
+					}
+					if (this.failure == null) {
+						this.write(true);
+					}
+					this.segment.close();
+					this.closed = true;
+				}
+			}
+		}
+	}
+
+	// private methods
+
+	private void append(byte kind, String[] labelValues, V value) {
+		boolean full;
+		synchronized (this) {
+			this.verifyOpen();
+			this.verifyWritten();
+			try {
+				this.record.reset();
+				this.recordOutput.writeByte(kind);
+				for (String labelValue : labelValues) {
+					writeString(this.recordOutput, labelValue);
+				}
+				this.valueCodec.write(value, this.recordOutput);
+				this.crc.reset();
+				this.crc.update(this.record.array(), 0, this.record.size());
+				this.pendingOutput.writeInt(this.record.size());
+				this.pendingOutput.writeInt((int) this.crc.getValue());
+				this.record.writeTo(this.pendingOutput);
+			} catch (IOException e) {
+				throw new RuntimeException("Problem writing the write-ahead log.", e);
+			}
+			full = this.pending.size() >= BUFFER_SIZE;
+		}
+		// the segment is written without holding the lock of the log
+		if (this.flusher == null) {
+			this.writePending(true);
+		} else if (full) {
+			this.writePending(false);
+		}
+	}
+
+	private void openSegment(long generation) throws IOException {
+		this.generation = generation;
+		this.segment = FileChannel.open(this.file(SEGMENT_PREFIX, generation, SEGMENT_SUFFIX).toPath(),
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		this.pending.reset();
+		this.pendingOutput.writeInt(MAGIC);
+		this.pendingOutput.writeInt(VERSION);
+		this.pendingOutput.writeInt(this.dimensions.length);
+		for (String dimension : this.dimensions) {
+			writeString(this.pendingOutput, dimension);
+		}
+		this.write(true);
+	}
+
+	// the task of the flusher, which is cancelled if it throws: the failure is
+	// recorded by write, and reported by the next append or sync instead
+	private void flush() {
+		synchronized (this.writeLock) {
+			synchronized (this) {
+				if (this.closed || this.failure != null) {
+					return;
+				}
+			}
+			try {
+				this.write(true);
+			} catch (IOException e) {
+				// recorded as the failure of the log
+			}
+		}
+	}
+
+	// writes the buffered rows unless the log is closed, in which case they have
+	// been written by close
+	private void writePending(boolean force) {
+		synchronized (this.writeLock) {
+			synchronized (this) {
+				if (this.closed) {
+					return;
+				}
+				this.verifyWritten();
+			}
+			try {
+				this.write(force);
+			} catch (IOException e) {
+				throw new RuntimeException("Problem writing the write-ahead log.", e);
+			}
+		}
+	}
+
+	// must be called holding the write lock: the buffers are swapped holding the
+	// lock of the log, which is released while the segment is written and synced
+	private void write(boolean force) throws IOException {
+		Buffer buffer;
+		synchronized (this) {
+			buffer = this.pending;
+			DataOutputStream output = this.pendingOutput;
+			this.pending = this.written;
+			this.pendingOutput = this.writtenOutput;
+			this.written = buffer;
+			this.writtenOutput = output;
+		}
+		try {
+			ByteBuffer bytes = ByteBuffer.wrap(buffer.array(), 0, buffer.size());
+			while (bytes.hasRemaining()) {
+				this.segment.write(bytes);
+			}
+			buffer.reset();
+			if (force) {
+				this.segment.force(false);
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				this.failure = e;
+			}
+			throw e;
+		}
+	}
+
+	private void replaySegment(File file, AggregationTree<V, ?> tree, LoadReport report) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 12) {
+				throw new RuntimeException("The log segment " + file.getName() + " is not valid.");
+			}
+			MappedInput input = new MappedInput(channel, 0, size);
+			if (input.getInt() != MAGIC) {
+				throw new RuntimeException("The log segment " + file.getName() + " is not valid.");
+			}
+			int version = input.getInt();
+			if (version != VERSION || input.getInt() != this.dimensions.length) {
+				throw new RuntimeException("The log segment " + file.getName() + " is not valid.");
+			}
+			for (int i = 0; i < this.dimensions.length; i++) {
+				input.getString();
+			}
+			CRC32 crc = new CRC32();
+			long index = 0;
+			while (input.position() < size) {
+				long offset = input.position();
+				if (size - offset < 8) {
+					report.addError(new RecordParseException("Truncated record.", index, offset, -1, -1));
+					return;
+				}
+				int length = input.getInt();
+				int checksum = input.getInt();
+				if (length < 0 || length > size - input.position()) {
+					report.addError(new RecordParseException("Truncated record.", index, offset, -1, -1));
+					return;
+				}
+				ByteBuffer buffer = input.ensure(length);
+				int start = buffer.position();
+				ByteBuffer payload = buffer.duplicate();
+				payload.limit(start + length);
+				crc.reset();
+				crc.update(payload);
+				if ((int) crc.getValue() != checksum) {
+					report.addError(new RecordParseException("Corrupted record.", index, offset, -1, -1));
+					return;
+				}
+				byte kind = buffer.get();
+				String[] labelValues = new String[this.dimensions.length];
+				for (int i = 0; i < labelValues.length; i++) {
+					labelValues[i] = readString(buffer);
+				}
+				PositionalRow<V> row = new PositionalRow<V>(labelValues, this.valueCodec.read(buffer));
+				if (kind != DELETE) {
+					tree.insert(row);
+					report.addLoadedRow();
+				} else if (tree.delete(row)) {
+					report.addLoadedRow();
+				} else {
+					report.addError(new RecordParseException("The deleted row is not in the tree.", index, offset, -1, -1));
+				}
+				buffer.position(start + length);
+				index = index + 1;
+			}
+		}
+	}
+
+	private long latestBase() {
+		long latest = 0;
+		for (long g : this.generations(BASE_PREFIX, BASE_SUFFIX)) {
+			latest = Math.max(latest, g);
+		}
+		return latest;
+	}
+
+	// generations of the files with the given prefix and suffix, sorted
+	private List<Long> generations(String prefix, String suffix) {
+		List<Long> generations = new ArrayList<Long>();
+		String[] names = this.directory.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(prefix) && name.endsWith(suffix)) {
+					try {
+						generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+					} catch (NumberFormatException e) {
+						// not a file of the log
+					}
+				}
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	private File file(String prefix, long generation, String suffix) {
+		return new File(this.directory, prefix + generation + suffix);
+	}
+
+	private void verifyOpen() {
+		if (this.closed) {
+			throw new IllegalStateException("The write-ahead log is closed.");
+		}
+	}
+
+	private void verifyWritten() {
+		if (this.failure != null) {
+			throw new RuntimeException("Problem writing the write-ahead log.", this.failure);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer input) {
+		byte[] bytes = new byte[input.getInt()];
+		input.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// exposes the bytes written, to avoid copying them
+	private static class Buffer extends ByteArrayOutputStream {
+
+		private Buffer() {
+			super(256);
+		}
+
+		private byte[] array() {
+			return this.buf;
+		}
+	}
+
+}
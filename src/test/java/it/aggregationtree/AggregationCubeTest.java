@@ -0,0 +1,103 @@
+package it.aggregationtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.utils.InputLoader;
+
+public class AggregationCubeTest {
+
+	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
+	private static final String QUERY_MISSES_LABEL_MESSAGE = "The provided query specifies a missing label value: ";
+
+	@Test
+	public void testOrderingsAndPlanner() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationCube<Integer, Integer> cube = new AggregationCube<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		cube.addOrdering(true, "nation", "eyes", "hair");
+		cube.load(data);
+		// orderings can be added after the rows
+		cube.addOrdering(false, "hair", "eyes");
+		AggregationTree<Integer, Integer> reordered = new AggregationTree<Integer, Integer>(data,
+				Aggregators.intSum(), "hair", "eyes", "nation");
+
+		Map<String, String> query = new HashMap<String, String>();
+		assertEquals(cube.get(query), Integer.valueOf(8516));
+		query.put("nation", "germany");
+		assertThat(cube.plan(query), contains("nation", "eyes", "hair"));
+		assertEquals(cube.get(query), Integer.valueOf(3323));
+
+		query.clear();
+		query.put("hair", "black");
+		assertThat(cube.plan(query), contains("hair", "eyes"));
+		assertEquals(cube.get(query), reordered.get("black"));
+		query.put("eyes", "blue");
+		assertEquals(cube.get(query), reordered.get("black", "blue"));
+		query.put("nation", "germany");
+		query.put("eyes", "green");
+		query.put("hair", "red");
+		assertThat(cube.plan(query), contains("nation", "eyes", "hair"));
+		assertEquals(cube.get(query), Integer.valueOf(1442));
+
+		Row<Integer> row = new Row<Integer>();
+		row.addLabel("nation", "germany");
+		row.addLabel("eyes", "green");
+		row.addLabel("hair", "red");
+		row.setValue(100);
+		cube.insert(row);
+		assertEquals(cube.get(query), Integer.valueOf(1542));
+		query.remove("nation");
+		assertEquals(cube.get(query), Integer.valueOf(reordered.get("red", "green") + 100));
+
+		query.put("eyes", "purple");
+		try {
+			cube.get(query);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "purple"));
+		}
+		try {
+			cube.addOrdering(true, "hair", "nation", "hair");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The ordering contains a repeated dimension: hair"));
+		}
+	}
+
+	@Test
+	public void testAggregationFunction() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationCube<Integer, Integer> cube = new AggregationCube<Integer, Integer>((l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		cube.load(data);
+
+		Map<String, String> query = new HashMap<String, String>();
+		query.put("nation", "germany");
+		assertThat(cube.plan(query), empty());
+		assertEquals(cube.get(query), Integer.valueOf(3323));
+
+		try {
+			cube.addOrdering(true, "nation");
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Materialized orderings require a decomposable aggregator."));
+		}
+		cube.addOrdering(false, "nation");
+		assertEquals(cube.get(query), Integer.valueOf(3323));
+	}
+
+}
@@ -1,16 +1,35 @@
 package it.aggregationtree;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
 import it.aggregationtree.AggregationTree;
 import it.aggregationtree.Row;
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.aggregators.KllSketch;
+import it.aggregationtree.aggregators.MeasureRecord;
+import it.aggregationtree.aggregators.Measures;
+import it.aggregationtree.cache.CacheStats;
+import it.aggregationtree.cache.LruQueryCache;
+import it.aggregationtree.exceptions.RecordParseException;
 import it.aggregationtree.utils.InputLoader;
+import it.aggregationtree.utils.LoadReport;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -19,6 +38,8 @@ public class AggregationTreeTest {
 
 	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
 	private static final String TEST_INVALID_JSON_SRC = "src/test/resources/invalid-json.json";
+	private static final String TEST_INVALID_RECORDS_SRC = "src/test/resources/invalid-records.json";
+	private static final String TEST_MISTYPED_VALUES_SRC = "src/test/resources/mistyped-values.json";
 	private static final Integer NEW_INSERTED_VALUE = 100;
 	
 	private static final String QUERY_MISSES_LABEL_MESSAGE = "The provided query specifies a missing label value: ";
@@ -26,6 +47,8 @@ public class AggregationTreeTest {
 	private static final String INSERT_MISSES_VALUE_MESSAGE = "The inserted row does not have a value: ";
 	private static final String TOO_MANY_LABELS_MESSAGE = "The provided query specifies too many labels.";
 	private static final String PARSING_ERROR_MESSAGE = "Error parsing the input json file.";
+	private static final String COALESCING_MESSAGE = "Coalescing requires a decomposable aggregator.";
+	private static final String SNAPSHOT_MESSAGE = "The snapshot of an aggregation tree is read-only.";
 	@Test
 	public void testSampleDataset() {
 		InputLoader<Integer> loader = new InputLoader<Integer>();
@@ -320,5 +343,898 @@ public class AggregationTreeTest {
 
 		Long afterCached = end - start;
 		assertThat(initial, greaterThan(afterCached));
+		// the first query missed the cache, the second one was served by it
+		assertEquals(pivot.getCacheStats().getMisses(), 1);
+		assertEquals(pivot.getCacheStats().getHits(), 1);
+
+		pivot.get("france", "blue");
+		pivot.get("france", "blue", "black");
+		assertEquals(pivot.getCacheStats().getMisses(), 2);
+		assertEquals(pivot.getCacheStats().getHits(), 2);
+	}
+
+	@Test
+	public void testHighCardinalityDimension() {
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>((l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "customer");
+
+		for (int i = 0; i < 20000; i++) {
+			Row<Integer> toInsert = new Row<Integer>();
+			toInsert.addLabel("nation", "germany");
+			toInsert.addLabel("customer", "customer" + i);
+			toInsert.setValue(i % 10);
+			pivot.insert(toInsert);
+		}
+
+		assertEquals(pivot.get("germany"), Integer.valueOf(90000));
+		assertEquals(pivot.get("germany", "customer19999"), Integer.valueOf(9));
+		try {
+			pivot.get("germany", "customer20000");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "customer20000"));
+		}
+	}
+
+	@Test
+	public void testAggregatorsOnSampleInput() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+
+		AggregationTree<Integer, Integer> sum = new AggregationTree<Integer, Integer>(data, Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		assertEquals(sum.get(), Integer.valueOf(8516));
+		assertEquals(sum.get("germany"), Integer.valueOf(3323));
+		assertEquals(sum.get("germany", "green"), Integer.valueOf(1610));
+		assertEquals(sum.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		AggregationTree<Integer, Long> count = new AggregationTree<Integer, Long>(data, Aggregators.count(),
+				"nation", "eyes", "hair");
+		assertEquals(count.get(), Long.valueOf(16));
+		assertEquals(count.get("germany"), Long.valueOf(7));
+		assertEquals(count.get("germany", "green", "red"), Long.valueOf(2));
+
+		AggregationTree<Integer, Integer> min = new AggregationTree<Integer, Integer>(data, Aggregators.min(),
+				"nation", "eyes", "hair");
+		assertEquals(min.get(), Integer.valueOf(103));
+		assertEquals(min.get("france"), Integer.valueOf(288));
+
+		AggregationTree<Integer, Integer> max = new AggregationTree<Integer, Integer>(data, Aggregators.max(),
+				"nation", "eyes", "hair");
+		assertEquals(max.get(), Integer.valueOf(907));
+		assertEquals(max.get("germany", "green"), Integer.valueOf(906));
+
+		AggregationTree<Integer, Double> mean = new AggregationTree<Integer, Double>(data, Aggregators.average(),
+				"nation", "eyes", "hair");
+		assertEquals(mean.get(), Double.valueOf(532.25));
+		assertEquals(mean.get("germany"), Double.valueOf(474.7142857142857));
+		assertEquals(mean.get("germany", "green", "red"), Double.valueOf(721));
+
+		Row<Integer> toInsert = new Row<Integer>();
+		toInsert.addLabel("nation", "germany");
+		toInsert.addLabel("eyes", "blue");
+		toInsert.addLabel("hair", "brown");
+		toInsert.setValue(NEW_INSERTED_VALUE);
+		sum.insert(toInsert);
+
+		assertEquals(sum.get(), Integer.valueOf(8516 + NEW_INSERTED_VALUE));
+		assertEquals(sum.get("germany", "blue"), Integer.valueOf(389 + NEW_INSERTED_VALUE));
+	}
+
+	@Test
+	public void testValuesView() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, (l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+
+		Collection<Integer> all = pivot.values();
+		assertEquals(all.size(), 16);
+		assertEquals(all.stream().mapToInt(Integer::intValue).sum(), 8516);
+
+		Collection<Integer> germanyGreen = pivot.values("germany", "green");
+		assertThat(germanyGreen, containsInAnyOrder(168, 536, 906));
+
+		Row<Integer> toInsert = new Row<Integer>();
+		toInsert.addLabel("nation", "germany");
+		toInsert.addLabel("eyes", "green");
+		toInsert.addLabel("hair", "brown");
+		toInsert.setValue(NEW_INSERTED_VALUE);
+		pivot.insert(toInsert);
+
+		// the view reflects the newly inserted row
+		assertThat(germanyGreen, containsInAnyOrder(168, 536, 906, NEW_INSERTED_VALUE));
+		assertEquals(all.size(), 17);
+	}
+
+	@Test
+	public void testCachingAfterInsert() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, (l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		pivot.setCaching(true);
+
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany", "blue"), Integer.valueOf(389));
+		assertEquals(pivot.get("france", "blue"), Integer.valueOf(1004));
+
+		Row<Integer> toInsert = new Row<Integer>();
+		toInsert.addLabel("nation", "germany");
+		toInsert.addLabel("eyes", "blue");
+		toInsert.addLabel("hair", "black");
+		toInsert.setValue(NEW_INSERTED_VALUE);
+		pivot.insert(toInsert);
+
+		// nodes on the path of the new row are recomputed
+		assertEquals(pivot.get(), Integer.valueOf(8516 + NEW_INSERTED_VALUE));
+		assertEquals(pivot.get("germany", "blue"), Integer.valueOf(389 + NEW_INSERTED_VALUE));
+		assertEquals(pivot.get("germany", "blue", "black"), NEW_INSERTED_VALUE);
+		// nodes out of the path keep their cached value
+		assertEquals(pivot.get("france", "blue"), Integer.valueOf(1004));
+
+		pivot.setCaching(false);
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323 + NEW_INSERTED_VALUE));
+	}
+
+	@Test
+	public void testBoundedQueryCache() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, (l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		pivot.setQueryCache(new LruQueryCache<Integer>(2));
+
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323));
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323));
+		assertEquals(pivot.get("france"), Integer.valueOf(2149));
+		assertEquals(pivot.get("spain"), Integer.valueOf(2896));
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323));
+
+		CacheStats stats = pivot.getCacheStats();
+		assertEquals(stats.getHits(), 1);
+		assertEquals(stats.getMisses(), 4);
+		assertEquals(stats.getEvictions(), 2);
+		assertEquals(pivot.getQueryCache().size(), 2);
+
+		pivot.setCaching(false);
+		assertNull(pivot.getCacheStats());
+	}
+
+	@Test
+	public void testPositionalRows() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		Schema schema = pivot.getSchema();
+		for (Row<Integer> r : data) {
+			pivot.insert(schema.toPositional(r));
+		}
+
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany", "green"), Integer.valueOf(1610));
+		assertEquals(schema.getDictionary(0).size(), 4);
+		assertEquals(schema.getDictionary(0).decode(schema.getDictionary(0).lookup("spain")), "spain");
+		assertEquals(schema.getDictionary(1).lookup("missingEyesColor"), Dictionary.MISSING);
+
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, NEW_INSERTED_VALUE));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442 + NEW_INSERTED_VALUE));
+
+		PositionalRow<Integer> toInsert = new PositionalRow<Integer>(new String[] { "germany", "green" }, 1);
+		try {
+			pivot.insert(toInsert);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(INSERT_MISSES_LABEL_VALUE_MESSAGE + toInsert));
+		}
+
+		// encoded rows are verified against the dictionaries
+		int[] codes = schema.encode(new String[] { "germany", "green", "red" });
+		pivot.insertEncoded(codes, 1);
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442 + NEW_INSERTED_VALUE + 1));
+		try {
+			pivot.insertEncoded(new int[] { codes[0], codes[1] }, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(INSERT_MISSES_LABEL_VALUE_MESSAGE + "[" + codes[0] + ", " + codes[1] + "]"));
+		}
+		try {
+			pivot.insertEncoded(new int[] { codes[0], codes[1], 1000 }, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The inserted code is not in the dictionary of hair: 1000"));
+		}
+		try {
+			pivot.insertEncoded(codes, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), startsWith("The inserted row does not have a value: "));
+		}
+		assertEquals(pivot.get(), Integer.valueOf(8516 + NEW_INSERTED_VALUE + 1));
+
+		Row<Integer> row = schema.toRow(new PositionalRow<Integer>(new String[] { "italy", "dark", "black" }, 1));
+		assertEquals(row.getLabel("eyes"), "dark");
+		assertEquals(row.getValue(), Integer.valueOf(1));
+	}
+
+	@Test
+	public void testLabelledNodes() {
+		// the labels have the same hash
+		Composite<Integer> node = new Composite<Integer>("root");
+		Composite<Integer> first = new Composite<Integer>("Aa");
+		Composite<Integer> second = new Composite<Integer>(new HashSet<Node<Integer>>(), "BB");
+		first.addValue(1);
+		second.addValue(2);
+		node.addChild(first);
+		node.addChild(second);
+
+		assertEquals(node.getCompositeChilds().size(), 2);
+		assertEquals(node.size(), 2);
+		assertThat(node.getChild("Aa"), sameInstance(first));
+		assertThat(node.getChild("BB"), sameInstance(second));
+		assertThat(node.getChild("Ab"), nullValue());
+		assertThat(first.getCode(), lessThan(Dictionary.MISSING));
+	}
+
+	@Test
+	public void testCoalescing() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Double> pivot = new AggregationTree<Integer, Double>(Aggregators.average(),
+				"nation", "eyes", "hair");
+		pivot.setCoalescing(true);
+		pivot.load(data);
+
+		assertEquals(pivot.get(), Double.valueOf(532.25));
+		assertEquals(pivot.get("germany", "green", "red"), Double.valueOf(721));
+		assertEquals(pivot.values().size(), 0);
+
+		AggregationTree<Integer, Integer> function = new AggregationTree<Integer, Integer>((l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		try {
+			function.setCoalescing(true);
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is(COALESCING_MESSAGE));
+		}
+	}
+
+	@Test
+	public void testParallelLoad() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> serial = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		serial.load(data);
+		AggregationTree<Integer, Integer> parallel = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		parallel.setCaching(true);
+		parallel.get();
+		parallel.parallelLoad(data);
+
+		assertEquals(parallel.get(), serial.get());
+		assertEquals(parallel.get("germany"), serial.get("germany"));
+		assertEquals(parallel.get("germany", "green", "red"), serial.get("germany", "green", "red"));
+		assertEquals(parallel.values().size(), 16);
+
+		AggregationTree<Integer, Integer> function = new AggregationTree<Integer, Integer>((l) -> {
+			return l.parallelStream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		function.parallelLoad(data);
+		assertEquals(function.get(), Integer.valueOf(8516));
+		assertEquals(function.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		// on a single dimension the first level holds the deepest groups
+		AggregationTree<Integer, Integer> nations = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation");
+		nations.parallelLoad(data);
+		Map<String, String> filter = new HashMap<String, String>();
+		filter.put("nation", "italy");
+		assertEquals(nations.slice(filter), Integer.valueOf(148));
+		assertEquals(nations.slice(filter), nations.get("italy"));
+
+		Row<Integer> toInsert = new Row<Integer>();
+		toInsert.addLabel("nation", "france");
+		toInsert.setValue(1004);
+		List<Row<Integer>> invalid = new ArrayList<Row<Integer>>(data);
+		invalid.add(serial.getSchema().toRow(new PositionalRow<Integer>(new String[] { "portugal", "blue", "black" }, 1)));
+		invalid.add(toInsert);
+		try {
+			serial.parallelLoad(invalid);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(INSERT_MISSES_LABEL_VALUE_MESSAGE + toInsert));
+		}
+		assertEquals(serial.get(), Integer.valueOf(8516));
+		// the label values of the rejected load are not added to the dictionaries
+		assertEquals(serial.getSchema().getDictionary(0).lookup("portugal"), Dictionary.MISSING);
+
+		// the nodes shared with a snapshot are copied while the cache is in use
+		AggregationTree<Integer, Integer> cached = new AggregationTree<Integer, Integer>(data.subList(0, 8),
+				Aggregators.intSum(), "nation", "eyes", "hair");
+		cached.setCaching(true);
+		Integer germany = cached.get("germany");
+		Integer green = cached.get("germany", "green");
+		AggregationTree<Integer, Integer> snapshot = cached.snapshot();
+		cached.parallelLoad(data.subList(8, 16));
+		assertEquals(cached.get(), serial.get());
+		assertEquals(cached.get("germany"), serial.get("germany"));
+		assertEquals(cached.get("germany", "green"), serial.get("germany", "green"));
+		assertEquals(snapshot.get("germany"), germany);
+		assertEquals(snapshot.get("germany", "green"), green);
+
+		// the rows loaded before a task fails stay loaded
+		Row<String> oops = new Row<String>();
+		oops.addLabel("nation", "germany");
+		oops.addLabel("eyes", "green");
+		oops.addLabel("hair", "red");
+		oops.setValue("oops");
+		Row<Integer> firstGermany = data.stream().filter((r) -> r.getLabel("nation").equals("germany")).findFirst()
+				.get();
+		List<Row<Integer>> failing = new ArrayList<Row<Integer>>();
+		failing.add(firstGermany);
+		failing.add(mistyped(oops));
+		failing.addAll(data);
+		AggregationTree<Integer, Integer> failed = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		try {
+			failed.parallelLoad(failing);
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("The parallel load failed."));
+			assertThat(e.getCause(), instanceOf(ClassCastException.class));
+		}
+		int others = 0;
+		for (Row<Integer> row : data) {
+			others = others + (row.getLabel("nation").equals("germany") ? 0 : row.getValue());
+		}
+		assertEquals(failed.get("germany"), firstGermany.getValue());
+		assertEquals(failed.get(), Integer.valueOf(others + firstGermany.getValue()));
+		assertEquals(failed.get("italy"), serial.get("italy"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Row<Integer> mistyped(Row<String> row) {
+		return (Row<Integer>) (Row<?>) row;
+	}
+
+	@Test
+	public void testSnapshot() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Double> pivot = new AggregationTree<Integer, Double>(data, Aggregators.average(),
+				"nation", "eyes", "hair");
+		pivot.setCaching(true);
+		assertEquals(pivot.get("germany", "green", "red"), Double.valueOf(721));
+
+		AggregationTree<Integer, Double> snapshot = pivot.snapshot();
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 1000));
+		pivot.insert(new PositionalRow<Integer>(new String[] { "portugal", "blue", "black" }, 1000));
+
+		assertEquals(snapshot.get(), Double.valueOf(532.25));
+		assertEquals(snapshot.get("germany", "green", "red"), Double.valueOf(721));
+		assertEquals(snapshot.values().size(), 16);
+		assertEquals(pivot.get("germany", "green", "red"), Double.valueOf(814));
+		assertEquals(pivot.values().size(), 18);
+		// a group inserted after the snapshot is absent from it
+		try {
+			snapshot.get("portugal");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "portugal"));
+		}
+
+		AggregationTree<Integer, Double> second = pivot.snapshot();
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 1000));
+		assertEquals(second.get("germany", "green", "red"), Double.valueOf(814));
+		assertEquals(snapshot.get("germany", "green", "red"), Double.valueOf(721));
+		assertEquals(second.values("germany", "green", "red").size(), 3);
+		assertEquals(pivot.values("germany", "green", "red").size(), 4);
+
+		try {
+			snapshot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 1000));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertThat(e.getMessage(), is(SNAPSHOT_MESSAGE));
+		}
+		assertTrue(snapshot.isReadOnly());
+	}
+
+	@Test
+	public void testGroupBy() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, Aggregators.intSum(),
+				"nation", "eyes", "hair");
+
+		Map<List<String>, Integer> nations = pivot.groupBy(1);
+		assertEquals(nations.size(), 4);
+		assertEquals(nations.get(Arrays.asList("germany")), Integer.valueOf(3323));
+		int total = 0;
+		for (Integer sum : nations.values()) {
+			total = total + sum;
+		}
+		assertEquals(total, 8516);
+		assertEquals(pivot.groupBy(0).get(Arrays.asList()), Integer.valueOf(8516));
+		assertEquals(pivot.groupBy(3).get(Arrays.asList("germany", "green", "red")), Integer.valueOf(1442));
+
+		Map<List<String>, Integer> all = pivot.groupByAll();
+		assertEquals(all.size(), 1 + pivot.groupBy(1).size() + pivot.groupBy(2).size() + pivot.groupBy(3).size());
+		assertEquals(all.get(Arrays.asList("germany", "green")), Integer.valueOf(1610));
+
+		List<String[]> queries = new ArrayList<String[]>();
+		queries.add(new String[] { "germany" });
+		queries.add(new String[] { "germany", "green" });
+		queries.add(new String[] { "germany", "green", "red" });
+		queries.add(new String[] {});
+		Map<List<String>, Integer> results = pivot.getAll(queries);
+		assertThat(results.values(), contains(3323, 1610, 1442, 8516));
+
+		queries.add(new String[] { "germany", "missingEyesColor" });
+		try {
+			pivot.getAll(queries);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "missingEyesColor"));
+		}
+		try {
+			pivot.getAll(Arrays.asList(new String[] { "germany", "green" }, new String[] { "germany", null }));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "null"));
+		}
+	}
+
+	@Test
+	public void testSlice() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		AggregationTree<Integer, Integer> reordered = new AggregationTree<Integer, Integer>(data,
+				Aggregators.intSum(), "hair", "eyes", "nation");
+
+		Map<String, String> filter = new HashMap<String, String>();
+		filter.put("hair", "black");
+		assertEquals(pivot.slice(filter), reordered.get("black"));
+		filter.put("eyes", "blue");
+		assertEquals(pivot.slice(filter), reordered.get("black", "blue"));
+		filter.put("nation", "germany");
+		filter.put("eyes", "green");
+		filter.put("hair", "red");
+		assertEquals(pivot.slice(filter), Integer.valueOf(1442));
+		assertEquals(pivot.slice(new HashMap<String, String>()), Integer.valueOf(8516));
+
+		AggregationTree<Integer, Integer> snapshot = pivot.snapshot();
+		pivot.insert(new PositionalRow<Integer>(new String[] { "portugal", "green", "red" }, 100));
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100));
+		filter.remove("nation");
+		assertEquals(pivot.slice(filter), Integer.valueOf(snapshot.slice(filter) + 200));
+
+		filter.put("skin", "fair");
+		try {
+			pivot.slice(filter);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The provided query specifies an unknown dimension: skin"));
+		}
+		filter.remove("skin");
+		filter.put("hair", "purple");
+		try {
+			pivot.slice(filter);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "purple"));
+		}
+
+		AggregationTree<Integer, Integer> function = new AggregationTree<Integer, Integer>(data, (l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		filter.clear();
+		filter.put("hair", "black");
+		assertEquals(function.slice(filter), reordered.get("black"));
+	}
+
+	@Test
+	public void testMeasures() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		Measures<Integer> measures = new Measures<Integer>().add("sum", Aggregators.intSum())
+				.add("count", Aggregators.count()).add("min", Aggregators.<Integer>min())
+				.add("average", Aggregators.average());
+		AggregationTree<Integer, MeasureRecord> pivot = new AggregationTree<Integer, MeasureRecord>(data, measures,
+				"nation", "eyes", "hair");
+		pivot.setCaching(true);
+
+		MeasureRecord record = pivot.get("germany", "green", "red");
+		assertEquals(record.get("sum"), Integer.valueOf(1442));
+		assertEquals(record.get("count"), Long.valueOf(2));
+		assertEquals(record.get("min"), Integer.valueOf(536));
+		assertEquals(record.get("average"), Double.valueOf(721));
+		assertThat(pivot.get().toMap("sum", "count").values(), contains(8516, 16L));
+
+		// records are not affected by later inserts
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100));
+		assertEquals(record.get("sum"), Integer.valueOf(1442));
+		assertEquals(pivot.get("germany", "green", "red").get("sum"), Integer.valueOf(1542));
+		assertEquals(pivot.get("germany", "green", "red").get("min"), Integer.valueOf(100));
+
+		// a cached record is finished once, whatever the thread reading it
+		MeasureRecord cached = pivot.get("germany");
+		assertEquals(Arrays.asList("sum", "count", "average").parallelStream().map(cached::get)
+				.collect(Collectors.toList()), Arrays.asList(cached.get("sum"), cached.get("count"), cached.get("average")));
+		assertThat(pivot.get("germany"), sameInstance(cached));
+
+		try {
+			record.get("median");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Unknown measure: median"));
+		}
+		try {
+			measures.add("max", Aggregators.<Integer>max());
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Measures cannot be added once the aggregation has started."));
+		}
+	}
+
+	@Test
+	public void testSketches() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Long> distinct = new AggregationTree<Integer, Long>(data,
+				Aggregators.approxDistinct(), "nation", "eyes", "hair");
+		// small cardinalities are counted exactly
+		assertEquals(distinct.get("germany", "green", "red"), Long.valueOf(2));
+		assertEquals(distinct.get(), Long.valueOf(16));
+
+		// sketches of many rows, merged bottom-up
+		AggregationTree<Integer, Long> users = new AggregationTree<Integer, Long>(Aggregators.approxDistinct(),
+				"shard");
+		AggregationTree<Integer, Double> latencies = new AggregationTree<Integer, Double>(
+				Aggregators.quantile(0.95, 42), "shard");
+		latencies.setCoalescing(true);
+		for (int i = 0; i < 100000; i++) {
+			String[] shard = { String.valueOf(i % 8) };
+			users.insert(new PositionalRow<Integer>(shard, i));
+			users.insert(new PositionalRow<Integer>(shard, i));
+			latencies.insert(new PositionalRow<Integer>(shard, i));
+		}
+		assertEquals(users.get(), 100000, 5000);
+		assertEquals(users.get("3"), 12500, 625);
+		assertEquals(latencies.get(), 95000, 2000);
+		assertEquals(latencies.get("3"), 95000, 2000);
+
+		AggregationTree<Integer, KllSketch> distribution = new AggregationTree<Integer, KllSketch>(
+				Aggregators.quantiles(KllSketch.DEFAULT_K, 42), "shard");
+		for (int i = 0; i < 10000; i++) {
+			distribution.insert(new PositionalRow<Integer>(new String[] { String.valueOf(i % 2) }, i));
+		}
+		KllSketch sketch = distribution.get();
+		assertEquals(sketch.getCount(), 10000);
+		assertEquals(sketch.quantile(0), 0, 0);
+		assertEquals(sketch.quantile(0.5), 5000, 200);
+		assertEquals(sketch.quantile(0.99), 9900, 200);
+		assertEquals(sketch.quantile(1), 9999, 0);
+
+		// the sketches returned by a query can keep growing
+		KllSketch grown = distribution.get("0");
+		grown.merge(distribution.get("1"));
+		grown.add(10000);
+		assertEquals(grown.getCount(), 10001);
+		assertEquals(grown.quantile(1), 10000, 0);
+		KllSketch empty = new KllSketch().copy();
+		empty.add(1);
+		assertEquals(empty.quantile(0.5), 1, 0);
+	}
+
+	@Test
+	public void testDelete() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		pivot.setCaching(true);
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442));
+		AggregationTree<Integer, Integer> snapshot = pivot.snapshot();
+
+		assertTrue(pivot.delete(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 536)));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(906));
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323 - 536));
+		assertEquals(pivot.get(), Integer.valueOf(8516 - 536));
+		assertEquals(snapshot.get("germany", "green", "red"), Integer.valueOf(1442));
+		assertThat(snapshot.values("germany", "green", "red"), containsInAnyOrder(536, 906));
+
+		// rows that are not in the tree are not deleted
+		assertFalse(pivot.delete(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 536)));
+		assertFalse(pivot.delete(new PositionalRow<Integer>(new String[] { "portugal", "green", "red" }, 536)));
+		assertEquals(pivot.get(), Integer.valueOf(8516 - 536));
+
+		// the groups left empty are pruned
+		assertTrue(pivot.update(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 906),
+				new PositionalRow<Integer>(new String[] { "portugal", "green", "red" }, 906)));
+		try {
+			pivot.get("germany", "green", "red");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "red"));
+		}
+		pivot.getCacheStats().reset();
+		assertEquals(pivot.get("portugal"), Integer.valueOf(906));
+		assertEquals(pivot.get("portugal"), Integer.valueOf(906));
+		assertEquals(pivot.getCacheStats().getHits(), 1);
+		assertEquals(pivot.getCacheStats().getMisses(), 1);
+		assertEquals(pivot.get(), Integer.valueOf(8516 - 536));
+		Map<String, String> filter = new HashMap<String, String>();
+		filter.put("eyes", "green");
+		filter.put("hair", "red");
+		assertEquals(pivot.slice(filter), Integer.valueOf(snapshot.slice(filter) - 536));
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100));
+		assertEquals(pivot.slice(filter), Integer.valueOf(snapshot.slice(filter) - 436));
+
+		// non-invertible aggregators recompute the partial states on the path
+		AggregationTree<Integer, Integer> min = new AggregationTree<Integer, Integer>(data,
+				Aggregators.<Integer>min(), "nation", "eyes", "hair");
+		assertEquals(min.get("germany", "green", "red"), Integer.valueOf(536));
+		assertTrue(min.delete(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 536)));
+		assertEquals(min.get("germany", "green", "red"), Integer.valueOf(906));
+		assertEquals(min.get(), Integer.valueOf(103));
+
+		AggregationTree<Integer, Integer> function = new AggregationTree<Integer, Integer>(data, (l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		assertTrue(function.delete(data.get(0)));
+		assertEquals(function.get(), Integer.valueOf(8516 - data.get(0).getValue()));
+
+		min.setCoalescing(true);
+		try {
+			min.delete(data.get(0));
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("Deleting from a coalescing tree requires an invertible aggregator."));
+		}
+
+		// coalescing trees refuse to retract a count below zero
+		AggregationTree<Integer, Long> counts = new AggregationTree<Integer, Long>(Aggregators.count(), "nation",
+				"eyes", "hair");
+		counts.setCoalescing(true);
+		counts.load(data);
+		PositionalRow<Integer> once = new PositionalRow<Integer>(new String[] { "portugal", "blue", "black" }, 1);
+		counts.insert(once);
+		assertTrue(counts.delete(once));
+		assertFalse(counts.delete(once));
+		assertEquals(counts.get("portugal"), Long.valueOf(0));
+		assertEquals(counts.get(), Long.valueOf(16));
+
+		PositionalRow<Integer> incomplete = new PositionalRow<Integer>(new String[] { "germany", "green" }, 1);
+		try {
+			pivot.delete(incomplete);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The deleted row misses a value for an aggregation dimension: " + incomplete));
+		}
+		try {
+			snapshot.delete(data.get(0));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertThat(e.getMessage(), is(SNAPSHOT_MESSAGE));
+		}
+	}
+
+	@Test
+	public void testTopK() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(data, Aggregators.intSum(),
+				"nation", "eyes", "hair");
+
+		Map<String, Integer> top = pivot.topK(2, Comparator.naturalOrder());
+		assertThat(top.keySet(), contains("germany", "spain"));
+		assertThat(top.values(), contains(3323, 2896));
+		assertThat(pivot.topK(10, Comparator.naturalOrder()).keySet(), contains("germany", "spain", "france", "italy"));
+		assertThat(pivot.topK(1, Comparator.reverseOrder()).keySet(), contains("italy"));
+
+		Map<String, Integer> eyes = pivot.topK(10, Comparator.naturalOrder(), "germany");
+		assertEquals(eyes.size(), pivot.groupBy(2).keySet().stream().filter((g) -> g.get(0).equals("germany")).count());
+		Integer previous = Integer.MAX_VALUE;
+		for (Map.Entry<String, Integer> entry : eyes.entrySet()) {
+			assertEquals(entry.getValue(), pivot.get("germany", entry.getKey()));
+			assertTrue(entry.getValue() <= previous);
+			previous = entry.getValue();
+		}
+		assertTrue(pivot.topK(3, Comparator.naturalOrder(), "germany", "green", "red").isEmpty());
+		assertEquals(pivot.topK(Integer.MAX_VALUE, Comparator.naturalOrder()).size(), 4);
+
+		// null aggregated values are ranked last
+		AggregationTree<Integer, Integer> large = new AggregationTree<Integer, Integer>(data, (l) -> {
+			int sum = l.stream().reduce(0, (a, b) -> a + b);
+			return sum < 1000 ? null : sum;
+		}, "nation", "eyes", "hair");
+		top = large.topK(4, Comparator.naturalOrder());
+		assertThat(top.keySet(), contains("germany", "spain", "france", "italy"));
+		assertNull(top.get("italy"));
+
+		try {
+			pivot.topK(0, Comparator.naturalOrder());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The number of childs to be returned must be positive."));
+		}
+		try {
+			pivot.topK(3, Comparator.naturalOrder(), "portugal");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "portugal"));
+		}
+	}
+
+	@Test
+	public void testRange() {
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "month", "day");
+		for (int month = 12; month >= 1; month--) {
+			for (int day = 1; day <= 3; day++) {
+				String[] labelValues = { "france", String.format("2025-%02d", month), String.valueOf(day) };
+				pivot.insert(new PositionalRow<Integer>(labelValues, 1));
+			}
+		}
+		for (int month = 6; month >= 1; month--) {
+			for (int day = 1; day <= 3; day++) {
+				String[] labelValues = { "germany", String.format("2026-%02d", month), String.valueOf(day) };
+				pivot.insert(new PositionalRow<Integer>(labelValues, month * 10 + day));
+			}
+		}
+		try {
+			pivot.getRange("2026-01", "2026-03", "germany");
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("The dimension has no declared order: month"));
+		}
+		pivot.setOrder("nation", Comparator.naturalOrder());
+		pivot.setOrder("month", Comparator.naturalOrder());
+
+		// narrow ranges are found in the order, wide ones by filtering the childs
+		assertEquals(pivot.getRange("2026-01", "2026-03", "germany"), Integer.valueOf(3 * 60 + 6 * 3));
+		assertEquals(pivot.getRange(null, "2026-02", "germany"), Integer.valueOf(3 * 30 + 6 * 2));
+		assertEquals(pivot.getRange("2026-07", null, "germany"), Integer.valueOf(0));
+		assertEquals(pivot.getRange("2025-06", "2026-01", "france"), Integer.valueOf(21));
+		assertEquals(pivot.getRange("france", "germany"), pivot.get());
+		assertEquals(pivot.getPrefixed("2026-0", "germany"), pivot.get("germany"));
+		assertEquals(pivot.getPrefixed("2025-1", "france"), Integer.valueOf(9));
+		assertEquals(pivot.getRange("2026-03", "2026-01", "germany"), Integer.valueOf(0));
+		pivot.setOrder("month", String::compareTo, true);
+		assertEquals(pivot.getPrefixed("2026-0", "germany"), pivot.get("germany"));
+
+		AggregationTree<Integer, Integer> snapshot = pivot.snapshot();
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "2026-02", "4" }, 100));
+		assertEquals(pivot.getRange("2026-01", "2026-03", "germany"), Integer.valueOf(3 * 60 + 6 * 3 + 100));
+		assertEquals(snapshot.getRange("2026-01", "2026-03", "germany"), Integer.valueOf(3 * 60 + 6 * 3));
+
+		// childs of ordered dimensions are enumerated in order
+		assertThat(pivot.groupBy(2).keySet(), contains(
+				Arrays.asList("france", "2025-01"), Arrays.asList("france", "2025-02"),
+				Arrays.asList("france", "2025-03"), Arrays.asList("france", "2025-04"),
+				Arrays.asList("france", "2025-05"), Arrays.asList("france", "2025-06"),
+				Arrays.asList("france", "2025-07"), Arrays.asList("france", "2025-08"),
+				Arrays.asList("france", "2025-09"), Arrays.asList("france", "2025-10"),
+				Arrays.asList("france", "2025-11"), Arrays.asList("france", "2025-12"),
+				Arrays.asList("germany", "2026-01"), Arrays.asList("germany", "2026-02"),
+				Arrays.asList("germany", "2026-03"), Arrays.asList("germany", "2026-04"),
+				Arrays.asList("germany", "2026-05"), Arrays.asList("germany", "2026-06")));
+		String printed = pivot.printTree();
+		assertTrue(printed.indexOf("2026-01") < printed.indexOf("2026-02"));
+
+		// prefixes are filtered one by one with other orders
+		pivot.setOrder("month", Comparator.reverseOrder());
+		assertThat(pivot.groupBy(2).keySet().iterator().next(), contains("france", "2025-12"));
+		assertEquals(pivot.getPrefixed("2025-1", "france"), Integer.valueOf(9));
+		assertEquals(pivot.getRange("2026-03", "2026-01", "germany"), Integer.valueOf(3 * 60 + 6 * 3 + 100));
+
+		try {
+			pivot.getRange("1", "2", "germany", "2026-01");
+			fail();
+		} catch (IllegalStateException e) {
+			assertThat(e.getMessage(), is("The dimension has no declared order: day"));
+		}
+		try {
+			pivot.setOrder("week", Comparator.naturalOrder());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The dimension is not part of the aggregation order: week"));
+		}
+	}
+
+	@Test
+	public void testStreamingLoad() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		LoadReport report = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC), pivot);
+
+		assertEquals(report.getLoadedRows(), 16);
+		assertFalse(report.hasErrors());
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		List<Row<Integer>> rows = new ArrayList<Row<Integer>>();
+		report = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC), rows::add);
+		assertEquals(rows.size(), 16);
+		assertEquals(rows.get(0).getValue(), Integer.valueOf(168));
+		assertEquals(rows.get(0).getLabel("hair"), "brown");
+	}
+
+	@Test
+	public void testStreamingLoadWithInvalidRecords() {
+		InputLoader<Integer> loader = new InputLoader<Integer>(Integer.class);
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		LoadReport report = loader.loadFromJson(new File(TEST_INVALID_RECORDS_SRC), pivot);
+
+		// valid records are loaded even if they follow invalid ones
+		assertEquals(report.getLoadedRows(), 2);
+		assertEquals(pivot.get("germany"), Integer.valueOf(271));
+
+		List<RecordParseException> errors = report.getErrors();
+		assertEquals(errors.size(), 4);
+		assertEquals(errors.get(0).getRecord(), 1);
+		assertEquals(errors.get(0).getLine(), 10);
+		assertEquals(errors.get(1).getRecord(), 2);
+		assertEquals(errors.get(2).getRecord(), 3);
+		assertThat(errors.get(2).getMessage(), containsString(INSERT_MISSES_LABEL_VALUE_MESSAGE));
+		// a value of another type than the values of the tree is rejected too
+		assertEquals(errors.get(3).getRecord(), 5);
+		assertThat(errors.get(3).getMessage(), containsString("The value of the record has an unexpected type."));
+		assertThat(errors.get(1).getOffset(), greaterThan(errors.get(0).getOffset()));
+
+		// a malformed structure stops the load
+		report = loader.loadFromJson(new File(TEST_INVALID_JSON_SRC), (r) -> {
+		});
+		assertEquals(report.getLoadedRows(), 1);
+		assertEquals(report.getErrors().size(), 1);
+	}
+
+	@Test
+	public void testStreamingLoadWithMistypedValues() {
+		InputLoader<Integer> loader = new InputLoader<Integer>(Integer.class);
+
+		// the mistyped values are rejected before any measure is accumulated
+		Measures<Integer> measures = new Measures<Integer>().add("count", Aggregators.count()).add("sum",
+				Aggregators.intSum());
+		AggregationTree<Integer, MeasureRecord> pivot = new AggregationTree<Integer, MeasureRecord>(measures,
+				"nation", "eyes", "hair");
+		LoadReport report = loader.loadFromJson(new File(TEST_MISTYPED_VALUES_SRC), pivot);
+		assertEquals(report.getLoadedRows(), 1);
+		assertEquals(report.getErrors().size(), 2);
+		assertEquals(report.getErrors().get(0).getRecord(), 1);
+		assertEquals(report.getErrors().get(1).getRecord(), 2);
+		assertThat(report.getErrors().get(1).getMessage(),
+				containsString("The value of the record has an unexpected type."));
+		assertEquals(pivot.get().get("count"), Long.valueOf(1));
+		assertEquals(pivot.get().get("sum"), Integer.valueOf(5));
+		assertEquals(pivot.getSchema().getDictionary(0).lookup("spain"), Dictionary.MISSING);
+		assertEquals(pivot.getSchema().getDictionary(0).lookup("italy"), Dictionary.MISSING);
+
+		// and before they are collected for an aggregation function
+		AggregationTree<Integer, Integer> function = new AggregationTree<Integer, Integer>((l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, "nation", "eyes", "hair");
+		report = loader.loadFromJson(new File(TEST_MISTYPED_VALUES_SRC), function);
+		assertEquals(report.getLoadedRows(), 1);
+		assertEquals(report.getErrors().size(), 2);
+		assertEquals(function.get(), Integer.valueOf(5));
+
+		// integer values are widened to the value type
+		AggregationTree<Long, Long> longs = new AggregationTree<Long, Long>(Aggregators.longSum(), "nation", "eyes",
+				"hair");
+		report = new InputLoader<Long>(Long.class).loadFromJson(new File(TEST_INVALID_RECORDS_SRC), longs);
+		assertEquals(report.getLoadedRows(), 3);
+		assertEquals(longs.get("germany"), Long.valueOf(5000000271L));
 	}
 }
@@ -0,0 +1,82 @@
+package it.aggregationtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.utils.InputLoader;
+
+public class ConcurrentAggregationTreeTest {
+
+	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
+	private static final String QUERY_MISSES_LABEL_MESSAGE = "The provided query specifies a missing label value: ";
+
+	@Test
+	public void testSumOnSampleInput() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		ConcurrentAggregationTree<Integer, Integer> pivot = new ConcurrentAggregationTree<Integer, Integer>(data,
+				Aggregators.intSum(), "nation", "eyes", "hair");
+
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1542));
+		assertEquals(pivot.get(), Integer.valueOf(8616));
+
+		try {
+			pivot.get("germany", "missingEyesColor");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "missingEyesColor"));
+		}
+	}
+
+	@Test
+	public void testConcurrentInsertsAndQueries() throws InterruptedException, ExecutionException {
+		final int threads = 8;
+		final int rows = 10000;
+		ConcurrentAggregationTree<Integer, Long> pivot = new ConcurrentAggregationTree<Integer, Long>(
+				Aggregators.count(), "group", "item");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(executor.submit(() -> {
+					for (int i = 0; i < rows; i++) {
+						pivot.insert(new PositionalRow<Integer>(new String[] { "g" + (i % 4), "i" + (i % 100) }, i));
+						if (i % 100 == 0) {
+							assertThat(pivot.get(), greaterThan(0L));
+						}
+					}
+				}));
+			}
+			// the failures of the workers are rethrown here
+			for (Future<?> worker : workers) {
+				worker.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(pivot.get(), Long.valueOf(threads * rows));
+		assertEquals(pivot.get("g1"), Long.valueOf(threads * rows / 4));
+		assertEquals(pivot.get("g1", "i1"), Long.valueOf(threads * rows / 100));
+		assertThat(pivot.printTree(), containsString("g1"));
+	}
+
+}
@@ -0,0 +1,118 @@
+package it.aggregationtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.aggregationtree.utils.InputLoader;
+
+public class PrimitiveAggregationTreeTest {
+
+	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
+	private static final String QUERY_MISSES_LABEL_MESSAGE = "The provided query specifies a missing label value: ";
+	private static final String INSERT_MISSES_LABEL_VALUE_MESSAGE = "The inserted row misses a value for an aggregation dimension: ";
+
+	@Test
+	public void testLongSumOnSampleInput() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		LongAggregationTree pivot = LongAggregationTree.sum("nation", "eyes", "hair");
+		pivot.load(data);
+
+		assertEquals(pivot.get(), 8516);
+		assertEquals(pivot.get("germany"), 3323);
+		assertEquals(pivot.get("germany", "green"), 1610);
+		assertEquals(pivot.get("germany", "green", "red"), 1442);
+		assertEquals(pivot.getCount("germany"), 7);
+		assertEquals(pivot.getMean(), 532.25, 0.0);
+		assertEquals(pivot.reduce(Math::max, Long.MIN_VALUE, "germany"), 906);
+
+		pivot.insert(100, "germany", "green", "red");
+		assertEquals(pivot.get("germany", "green", "red"), 1542);
+		assertEquals(pivot.get(), 8616);
+
+		try {
+			pivot.get("germany", "missingEyesColor");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(QUERY_MISSES_LABEL_MESSAGE + "missingEyesColor"));
+		}
+	}
+
+	@Test
+	public void testDoubleMinMaxOnSampleInput() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		DoubleAggregationTree min = DoubleAggregationTree.min("nation", "eyes", "hair");
+		min.load(data);
+		DoubleAggregationTree max = new DoubleAggregationTree(data, Math::max, Double.NEGATIVE_INFINITY, "nation",
+				"eyes", "hair");
+
+		assertEquals(min.get(), 103.0, 0.0);
+		assertEquals(min.get("france"), 288.0, 0.0);
+		assertEquals(max.get(), 907.0, 0.0);
+		assertEquals(max.get("germany", "green"), 906.0, 0.0);
+		assertEquals(max.getMean("germany"), 474.7142857142857, 1e-9);
+
+		max.insert(0.5, "italy", "blue", "black");
+		assertEquals(max.get("italy"), 148.0, 0.0);
+		assertEquals(max.get("italy", "blue"), 0.5, 0.0);
+	}
+
+	@Test
+	public void testMissingLabelInPrimitiveInsert() {
+		LongAggregationTree pivot = LongAggregationTree.sum("nation", "eyes", "hair");
+		Row<Long> toInsert = new Row<Long>();
+		toInsert.addLabel("nation", "france");
+		toInsert.addLabel("eyes", "blue");
+		toInsert.setValue(1004L);
+		try {
+			pivot.insert(toInsert);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(INSERT_MISSES_LABEL_VALUE_MESSAGE + toInsert));
+		}
+		try {
+			pivot.insert(3, "france", null, "black");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is(INSERT_MISSES_LABEL_VALUE_MESSAGE + "[france, null, black]"));
+		}
+		assertEquals(pivot.getCount(), 0);
+	}
+
+	@Test
+	public void testFractionalValueInLongInsert() {
+		LongAggregationTree pivot = LongAggregationTree.sum("nation");
+		Row<Number> toInsert = new Row<Number>();
+		toInsert.addLabel("nation", "france");
+		toInsert.setValue(2.5);
+		try {
+			pivot.insert(toInsert);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The inserted value is not an integer: 2.5"));
+		}
+		toInsert.setValue(BigInteger.ONE.shiftLeft(63));
+		try {
+			pivot.insert(toInsert);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Value out of the range of a long: 9223372036854775808"));
+		}
+		assertEquals(pivot.getCount(), 0);
+
+		toInsert.setValue(BigInteger.valueOf(3));
+		pivot.insert(toInsert);
+		toInsert.setValue(4);
+		pivot.insert(toInsert);
+		assertEquals(pivot.get("france"), 7);
+	}
+}
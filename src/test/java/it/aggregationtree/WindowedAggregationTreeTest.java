@@ -0,0 +1,85 @@
+package it.aggregationtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Test;
+
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.utils.InputLoader;
+
+public class WindowedAggregationTreeTest {
+
+	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
+	private static final long MINUTE = 60000;
+
+	@Test
+	public void testSlidingWindow() {
+		InputLoader<Integer> loader = new InputLoader<Integer>();
+		List<Row<Integer>> data = loader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		// a 15 minutes window made of 1 minute buckets
+		WindowedAggregationTree<Integer, Integer> pivot = new WindowedAggregationTree<Integer, Integer>(
+				Aggregators.intSum(), MINUTE, 15, "nation", "eyes", "hair");
+		assertEquals(pivot.get(), Integer.valueOf(0));
+
+		// one row per minute
+		for (int i = 0; i < data.size(); i++) {
+			assertTrue(pivot.insert(i * MINUTE, data.get(i)));
+		}
+		int total = 0;
+		for (int i = 1; i < data.size(); i++) {
+			total = total + data.get(i).getValue();
+		}
+		assertEquals(pivot.getWindowStart(), MINUTE);
+		assertEquals(pivot.getWindowEnd(), 16 * MINUTE);
+		assertEquals(pivot.get(), Integer.valueOf(total));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		// rows older than the window are not inserted, late rows within it are
+		assertFalse(pivot.insert(0, data.get(0)));
+		assertTrue(pivot.insert(MINUTE + 1, new PositionalRow<Integer>(new String[] { "portugal", "green", "red" }, 100)));
+		assertEquals(pivot.get("portugal"), Integer.valueOf(100));
+
+		// rejected rows do not slide the window
+		Row<Integer> invalid = new Row<Integer>();
+		invalid.addLabel("nation", "france");
+		invalid.setValue(100);
+		try {
+			pivot.insert(100 * MINUTE, invalid);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals(pivot.getWindowEnd(), 16 * MINUTE);
+			assertEquals(pivot.get("portugal"), Integer.valueOf(100));
+		}
+
+		// the buckets expire as the window slides
+		pivot.advance(16 * MINUTE);
+		assertEquals(pivot.get("portugal"), Integer.valueOf(0));
+		assertEquals(pivot.get(), Integer.valueOf(total - data.get(1).getValue()));
+		pivot.advance(10 * MINUTE);
+		assertEquals(pivot.get(), Integer.valueOf(total - data.get(1).getValue()));
+		pivot.advance(100 * MINUTE);
+		assertEquals(pivot.get(), Integer.valueOf(0));
+
+		try {
+			pivot.get("germany", "green", "red", "tall");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The provided query specifies too many labels."));
+		}
+		try {
+			new WindowedAggregationTree<Integer, Integer>(Aggregators.intSum(), 0, 15, "nation");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The duration of a bucket must be positive."));
+		}
+	}
+
+}
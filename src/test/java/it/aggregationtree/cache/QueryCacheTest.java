@@ -0,0 +1,72 @@
+package it.aggregationtree.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class QueryCacheTest {
+
+	@Test
+	public void testLruEviction() {
+		QueryCache<Integer> cache = new LruQueryCache<Integer>(2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		// "a" becomes the most recently used
+		assertEquals(cache.get("a"), Integer.valueOf(1));
+		cache.put("c", 3);
+
+		assertNull(cache.get("b"));
+		assertEquals(cache.get("a"), Integer.valueOf(1));
+		assertEquals(cache.get("c"), Integer.valueOf(3));
+		assertEquals(cache.size(), 2);
+
+		assertEquals(cache.getStats().getHits(), 3);
+		assertEquals(cache.getStats().getMisses(), 1);
+		assertEquals(cache.getStats().getEvictions(), 1);
+	}
+
+	@Test
+	public void testLfuEviction() {
+		QueryCache<Integer> cache = new LfuQueryCache<Integer>(2);
+		cache.put("a", 1);
+		cache.put("b", 2);
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		cache.put("c", 3);
+
+		// "b" has been used less than "a"
+		assertNull(cache.get("b"));
+		assertEquals(cache.get("a"), Integer.valueOf(1));
+
+		cache.put("d", 4);
+		// "c" has been used less than "a"
+		assertNull(cache.get("c"));
+		assertEquals(cache.get("d"), Integer.valueOf(4));
+		assertEquals(cache.getStats().getEvictions(), 2);
+	}
+
+	@Test
+	public void testWeightBudget() {
+		LruQueryCache<String> cache = new LruQueryCache<String>(10, (v) -> v.length());
+		cache.put("a", "12345");
+		cache.put("b", "1234");
+		assertEquals(cache.getWeight(), 9);
+
+		cache.put("c", "12");
+		assertNull(cache.get("a"));
+		assertEquals(cache.getWeight(), 6);
+
+		// values exceeding the whole budget are not cached
+		cache.put("d", "12345678901");
+		assertNull(cache.get("d"));
+		assertEquals(cache.size(), 2);
+
+		cache.invalidate("b");
+		assertEquals(cache.getWeight(), 2);
+		cache.clear();
+		assertEquals(cache.size(), 0);
+		assertEquals(cache.getWeight(), 0);
+	}
+}
@@ -0,0 +1,361 @@
+package it.aggregationtree.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.aggregationtree.AggregationTree;
+import it.aggregationtree.Dictionary;
+import it.aggregationtree.PositionalRow;
+import it.aggregationtree.Row;
+import it.aggregationtree.aggregators.Aggregators;
+import it.aggregationtree.utils.ColumnarWriter.ValueType;
+
+public class LoaderTest {
+
+	private static final String TEST_SAMPLE_DATASET_SRC = "src/test/resources/sample-input.json";
+	private static final String TEST_SAMPLE_CSV_SRC = "src/test/resources/sample-input.csv";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCsvLoad() {
+		CsvLoader<Integer> loader = new CsvLoader<Integer>("value", ValueParser.INTEGER);
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		LoadReport report = loader.load(new File(TEST_SAMPLE_CSV_SRC), pivot);
+
+		assertEquals(report.getLoadedRows(), 16);
+		assertFalse(report.hasErrors());
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany", "green", "red"), Integer.valueOf(1442));
+	}
+
+	@Test
+	public void testCsvLoadWithInvalidLines() throws IOException {
+		File csv = folder.newFile("quirks.csv");
+		String content = "value;nation;eyes;hair\r\n" //
+				+ "10;germany;\"dark\";black\r\n" //
+				+ "\r\n" //
+				+ "20;\"ger\"\"many\";blue;red\r\n" //
+				+ "abc;italy;dark;black\r\n" //
+				+ "30;italy;dark\r\n" //
+				+ "40;\"italy;dark\";x;y\r\n" //
+				+ "-5;germany;dark;black";
+		Files.write(csv.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+		CsvLoader<Long> loader = new CsvLoader<Long>("value", ValueParser.LONG, ';');
+		AggregationTree<Long, Long> pivot = new AggregationTree<Long, Long>(Aggregators.longSum(), "nation", "eyes",
+				"hair");
+		LoadReport report = loader.load(csv, pivot);
+
+		assertEquals(report.getLoadedRows(), 4);
+		assertEquals(report.getErrors().size(), 2);
+		assertEquals(report.getErrors().get(0).getLine(), 5);
+		assertEquals(report.getErrors().get(1).getLine(), 6);
+		assertEquals(pivot.get("germany", "dark", "black"), Long.valueOf(5));
+		assertEquals(pivot.get("ger\"many"), Long.valueOf(20));
+		assertEquals(pivot.get("italy;dark"), Long.valueOf(40));
+		// the labels of the lines whose value is rejected are not encoded
+		assertEquals(pivot.getSchema().getDictionary(0).lookup("italy"), Dictionary.MISSING);
+
+		// values out of the range of their type are reported, not truncated
+		File overflowing = folder.newFile("overflowing.csv");
+		content = "value;nation;eyes;hair\r\n" //
+				+ "3000000000;germany;dark;black\r\n" //
+				+ "-2147483648;germany;dark;black\r\n";
+		Files.write(overflowing.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		AggregationTree<Integer, Long> ints = new AggregationTree<Integer, Long>(Aggregators.longSum(), "nation",
+				"eyes", "hair");
+		report = new CsvLoader<Integer>("value", ValueParser.INTEGER, ';').load(overflowing, ints);
+		assertEquals(report.getLoadedRows(), 1);
+		assertEquals(report.getErrors().get(0).getLine(), 2);
+		assertEquals(ints.get(), Long.valueOf(Integer.MIN_VALUE));
+		byte[] digits = "-9223372036854775808".getBytes(StandardCharsets.UTF_8);
+		assertEquals(ValueParser.parseLong(ByteBuffer.wrap(digits), 0, digits.length), Long.MIN_VALUE);
+		digits = "9223372036854775808".getBytes(StandardCharsets.UTF_8);
+		try {
+			ValueParser.parseLong(ByteBuffer.wrap(digits), 0, digits.length);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Value out of the range of a long: 9223372036854775808"));
+		}
+	}
+
+	@Test
+	public void testColumnarRoundTrip() throws IOException {
+		File columnar = folder.newFile("sample.col");
+		InputLoader<Integer> jsonLoader = new InputLoader<Integer>();
+		try (ColumnarWriter writer = new ColumnarWriter(columnar, ValueType.INT, "hair", "eyes", "nation")) {
+			jsonLoader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC), writer::append);
+		}
+
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		// some label values are already known by the tree
+		Row<Integer> known = new Row<Integer>();
+		known.addLabel("nation", "germany");
+		known.addLabel("eyes", "green");
+		known.addLabel("hair", "brown");
+		known.setValue(0);
+		pivot.insert(known);
+
+		ColumnarLoader<Integer> loader = new ColumnarLoader<Integer>();
+		LoadReport report = loader.load(columnar, pivot);
+
+		assertEquals(report.getLoadedRows(), 16);
+		assertEquals(pivot.get(), Integer.valueOf(8516));
+		assertEquals(pivot.get("germany"), Integer.valueOf(3323));
+		assertEquals(pivot.get("spain", "dark", "black"), Integer.valueOf(907));
+		assertEquals(pivot.getSchema().getDictionary(0).size(), 4);
+
+		// the columnar file can be converted back into rows
+		List<Row<Integer>> rows = new ArrayList<Row<Integer>>();
+		CsvLoader<Integer> csvLoader = new CsvLoader<Integer>("value", ValueParser.INTEGER);
+		csvLoader.load(new File(TEST_SAMPLE_CSV_SRC), rows::add);
+		assertEquals(rows.size(), 16);
+		assertEquals(rows.get(1).getLabel("nation"), "spain");
+
+		PositionalRow<Long> overflowing = new PositionalRow<Long>(new String[] { "red", "green", "germany" },
+				3000000000L);
+		try (ColumnarWriter writer = new ColumnarWriter(folder.newFile("overflowing.col"), ValueType.INT, "hair",
+				"eyes", "nation")) {
+			writer.append(overflowing);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The appended row has a value out of the range of an int: " + overflowing));
+		}
+	}
+
+	@Test
+	public void testTreeFileRoundTrip() throws IOException {
+		File saved = folder.newFile("sample.tree");
+		InputLoader<Integer> jsonLoader = new InputLoader<Integer>();
+		List<Row<Integer>> data = jsonLoader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Double> pivot = new AggregationTree<Integer, Double>(data, Aggregators.average(),
+				"nation", "eyes", "hair");
+		pivot.save(saved, Codec.INTEGER, Codec.DOUBLE_ARRAY);
+
+		AggregationTree<Integer, Double> opened = AggregationTree.open(saved, Aggregators.average(), Codec.INTEGER,
+				Codec.DOUBLE_ARRAY);
+		assertEquals(opened.get(), Double.valueOf(532.25));
+		assertEquals(opened.get("germany", "green", "red"), Double.valueOf(721));
+		assertEquals(opened.getSchema().getDimension(0), "nation");
+		assertEquals(opened.values().size(), 16);
+		assertThat(opened.values("germany", "green", "red"), containsInAnyOrder(536, 906));
+
+		opened.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 1000));
+		opened.insert(new PositionalRow<Integer>(new String[] { "portugal", "blue", "black" }, 1000));
+		assertEquals(opened.get("germany", "green", "red"), Double.valueOf(814));
+		assertEquals(opened.get("portugal"), Double.valueOf(1000));
+
+		// without their codec the partial states are computed from the values
+		AggregationTree<Integer, Integer> sum = AggregationTree.open(saved, Aggregators.intSum(), Codec.INTEGER,
+				null);
+		assertEquals(sum.get(), Integer.valueOf(8516));
+		AggregationTree<Integer, Integer> function = AggregationTree.open(saved, (l) -> {
+			return l.stream().reduce(0, (a, b) -> a + b);
+		}, Codec.INTEGER);
+		assertEquals(function.get("germany", "green", "red"), Integer.valueOf(1442));
+
+		pivot.setCoalescing(true);
+		try {
+			pivot.save(saved, Codec.INTEGER);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("Saving a coalescing tree requires a codec for the partial states."));
+		}
+		pivot.save(saved, Codec.INTEGER, Codec.DOUBLE_ARRAY);
+		try {
+			AggregationTree.open(saved, (l) -> {
+				return l.size();
+			}, Codec.INTEGER);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), is("The coalescing tree cannot be opened with an aggregation function."));
+		}
+	}
+
+	@Test
+	public void testWriteAheadLog() throws IOException {
+		File directory = folder.newFolder("log");
+		InputLoader<Integer> jsonLoader = new InputLoader<Integer>();
+		List<Row<Integer>> data = jsonLoader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			pivot.setWriteAheadLog(log);
+			pivot.load(data.subList(0, 8));
+			log.compact(pivot, Codec.INTEGER);
+			pivot.parallelLoad(data.subList(8, 16));
+			pivot.insert(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100));
+			pivot.update(new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 100),
+					new PositionalRow<Integer>(new String[] { "germany", "green", "red" }, 50));
+		}
+
+		// a record was not completely written before a crash
+		File[] segments = directory.listFiles((d, name) -> name.endsWith(".log"));
+		Arrays.sort(segments, Comparator.comparingLong((f) -> Long.parseLong(f.getName().replaceAll("\\D", ""))));
+		Files.write(segments[segments.length - 1].toPath(), new byte[] { 0, 0, 1 }, StandardOpenOption.APPEND);
+
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 10, "nation", "eyes",
+				"hair")) {
+			assertThat(log.getBase(), notNullValue());
+			AggregationTree<Integer, Integer> recovered = AggregationTree.open(log.getBase(), Aggregators.intSum(),
+					Codec.INTEGER, Codec.INTEGER);
+			assertEquals(recovered.values().size(), 8);
+			LoadReport report = log.replay(recovered);
+
+			assertEquals(report.getLoadedRows(), 11);
+			assertEquals(report.getErrors().size(), 1);
+			assertEquals(recovered.get(), Integer.valueOf(8566));
+			assertEquals(recovered.get("germany", "green", "red"), Integer.valueOf(1492));
+
+			recovered.setWriteAheadLog(log);
+			try {
+				log.replay(recovered);
+				fail();
+			} catch (IllegalStateException e) {
+				assertThat(e.getMessage(), is("The log cannot be replayed into a tree writing to it."));
+			}
+		}
+	}
+
+	@Test
+	public void testWriteAheadLogOfFailedParallelLoad() throws IOException {
+		File directory = folder.newFolder("log");
+		InputLoader<Integer> jsonLoader = new InputLoader<Integer>();
+		List<Row<Integer>> data = new ArrayList<Row<Integer>>(
+				jsonLoader.loadFromJson(new File(TEST_SAMPLE_DATASET_SRC)));
+		Row<String> oops = new Row<String>();
+		oops.addLabel("nation", "germany");
+		oops.addLabel("eyes", "green");
+		oops.addLabel("hair", "red");
+		oops.setValue("oops");
+		data.add(1, mistyped(oops));
+		AggregationTree<Integer, Integer> pivot = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+				"nation", "eyes", "hair");
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			pivot.setWriteAheadLog(log);
+			try {
+				pivot.parallelLoad(data);
+				fail();
+			} catch (IllegalStateException e) {
+				assertThat(e.getMessage(), is("The parallel load failed."));
+			}
+		}
+
+		// only the loaded rows are logged, so the replay rebuilds the same tree
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			AggregationTree<Integer, Integer> recovered = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+					"nation", "eyes", "hair");
+			LoadReport report = log.replay(recovered);
+			assertFalse(report.hasErrors());
+			assertEquals(recovered.get(), pivot.get());
+			assertEquals(recovered.get("germany"), pivot.get("germany"));
+			assertEquals(recovered.values().size(), pivot.values().size());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Row<Integer> mistyped(Row<String> row) {
+		return (Row<Integer>) (Row<?>) row;
+	}
+
+	@Test
+	public void testWriteAheadLogGroupCommit() throws IOException, InterruptedException {
+		File directory = folder.newFolder("log");
+		// rows are appended by several threads while the flusher syncs them
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 1, "nation", "eyes",
+				"hair")) {
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				threads.add(new Thread(() -> {
+					for (int i = 0; i < 1000; i++) {
+						log.append(new String[] { "germany", "green", "red" }, 1);
+					}
+				}));
+			}
+			threads.forEach(Thread::start);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			AggregationTree<Integer, Integer> recovered = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+					"nation", "eyes", "hair");
+			LoadReport report = log.replay(recovered);
+			assertFalse(report.hasErrors());
+			assertEquals(report.getLoadedRows(), 4000);
+			assertEquals(recovered.get(), Integer.valueOf(4000));
+		}
+	}
+
+	@Test
+	public void testWriteAheadLogDeletions() throws IOException {
+		File directory = folder.newFolder("log");
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			log.append(new String[] { "germany", "green", "red" }, 536);
+			log.append(new String[] { "germany", "green", "red" }, 906);
+		}
+
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			log.delete(new String[] { "germany", "green", "red" }, 536);
+			log.delete(new String[] { "germany", "green", "red" }, 536);
+		}
+
+		try (WriteAheadLog<Integer> log = new WriteAheadLog<Integer>(directory, Codec.INTEGER, 0, "nation", "eyes",
+				"hair")) {
+			AggregationTree<Integer, Integer> recovered = new AggregationTree<Integer, Integer>(Aggregators.intSum(),
+					"nation", "eyes", "hair");
+			LoadReport report = log.replay(recovered);
+
+			// the second deletion finds no row left to delete
+			assertEquals(report.getLoadedRows(), 3);
+			assertEquals(report.getErrors().size(), 1);
+			assertThat(report.getErrors().get(0).getMessage(), containsString("The deleted row is not in the tree."));
+			assertEquals(recovered.get("germany", "green", "red"), Integer.valueOf(906));
+		}
+	}
+
+	@Test
+	public void testDictionaryLookupByBytes() {
+		Dictionary dictionary = new Dictionary();
+		for (int i = 0; i < 100; i++) {
+			dictionary.encode("value" + i);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap("xxvalue42yy".getBytes(StandardCharsets.UTF_8));
+		assertEquals(dictionary.lookup(buffer, 2, 7), 42);
+		assertEquals(dictionary.lookup(buffer, 2, 6), 4);
+		assertEquals(dictionary.lookup(buffer, 0, 4), Dictionary.MISSING);
+
+		assertEquals(dictionary.encode(buffer, 0, 4), 100);
+		assertThat(dictionary.decode(100), is("xxva"));
+		assertEquals(dictionary.lookup(buffer, 0, 4), 100);
+	}
+}